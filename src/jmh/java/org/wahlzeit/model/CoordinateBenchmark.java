@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares isEqual and getCartesianDistance of spheric coordinates, which read the cached Cartesian representation,
+ * with the previous code, which converted both coordinates on every call. The uncached variants repeat that code.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CoordinateBenchmark {
+    // a power of two, so that the index wraps with a mask
+    private static final int NO_COORDINATES = 1024;
+
+    private SphericCoordinate[] coordinates;
+    private int index = 0;
+
+    /**
+     * @methodtype initialization
+     */
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        coordinates = new SphericCoordinate[NO_COORDINATES];
+        for (int i = 0; i < NO_COORDINATES; i++) {
+            coordinates[i] = Coordinate.getSphericCoordinate(random.nextDouble() * 2 * Math.PI - Math.PI,
+                    random.nextDouble() * Math.PI, 1 + random.nextDouble() * 100);
+        }
+    }
+
+    @Benchmark
+    public boolean isEqualCached() {
+        int i = nextIndex();
+        return coordinates[i].isEqual(coordinates[(i + 1) & (NO_COORDINATES - 1)]);
+    }
+
+    @Benchmark
+    public boolean isEqualUncached() {
+        int i = nextIndex();
+        return isEqualUncached(coordinates[i], coordinates[(i + 1) & (NO_COORDINATES - 1)]);
+    }
+
+    @Benchmark
+    public double getCartesianDistanceCached() {
+        int i = nextIndex();
+        return coordinates[i].getCartesianDistance(coordinates[(i + 1) & (NO_COORDINATES - 1)]);
+    }
+
+    @Benchmark
+    public double getCartesianDistanceUncached() {
+        int i = nextIndex();
+        return getCartesianDistanceUncached(coordinates[i], coordinates[(i + 1) & (NO_COORDINATES - 1)]);
+    }
+
+    /**
+     * @methodtype helper
+     */
+    private int nextIndex() {
+        index = (index + 1) & (NO_COORDINATES - 1);
+        return index;
+    }
+
+    /**
+     * AbstractCoordinate.isEqual before the Cartesian representation was cached
+     *
+     * @methodtype boolean-query
+     */
+    private static boolean isEqualUncached(SphericCoordinate first, SphericCoordinate second) {
+        CartesianCoordinate cartesianFirst = asCartesianCoordinateUncached(first);
+        CartesianCoordinate cartesianSecond = asCartesianCoordinateUncached(second);
+
+        double xDiff = Math.abs(cartesianSecond.getX() - cartesianFirst.getX());
+        double yDiff = Math.abs(cartesianSecond.getY() - cartesianFirst.getY());
+        double zDiff = Math.abs(cartesianSecond.getZ() - cartesianFirst.getZ());
+
+        return (xDiff + yDiff + zDiff) < AbstractCoordinate.EQUALITY_THRESHOLD;
+    }
+
+    /**
+     * AbstractCoordinate.getCartesianDistance before the Cartesian representation was cached
+     *
+     * @methodtype get
+     */
+    private static double getCartesianDistanceUncached(SphericCoordinate first, SphericCoordinate second) {
+        CartesianCoordinate cartesianFirst = asCartesianCoordinateUncached(first);
+        CartesianCoordinate cartesianSecond = asCartesianCoordinateUncached(second);
+
+        double xDiff = Math.abs(cartesianSecond.getX() - cartesianFirst.getX());
+        double yDiff = Math.abs(cartesianSecond.getY() - cartesianFirst.getY());
+        double zDiff = Math.abs(cartesianSecond.getZ() - cartesianFirst.getZ());
+
+        return Math.abs(Math.sqrt(Math.pow(xDiff, 2) + Math.pow(yDiff, 2) + Math.pow(zDiff, 2)));
+    }
+
+    /**
+     * SphericCoordinate.asCartesianCoordinate before the result was cached
+     *
+     * @methodtype conversion
+     */
+    private static CartesianCoordinate asCartesianCoordinateUncached(SphericCoordinate coordinate) {
+        double x = coordinate.getRadius() * Math.sin(coordinate.getTheta()) * Math.cos(coordinate.getPhi());
+        double y = coordinate.getRadius() * Math.sin(coordinate.getTheta()) * Math.sin(coordinate.getPhi());
+        double z = coordinate.getRadius() * Math.cos(coordinate.getTheta());
+
+        return new CartesianCoordinate(x, y, z);
+    }
+}
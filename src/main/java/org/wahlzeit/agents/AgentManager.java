@@ -43,6 +43,8 @@ public class AgentManager {
 	 */
 	protected static void initInstance() {
 		getInstance().addAgent(new NotifyUsersAboutPraiseAgent());
+		getInstance().addAgent(new FlushPraiseAgent());
+		getInstance().addAgent(new SaveGlobalsAgent());
 	}
 
 	/**
@@ -5,6 +5,7 @@ import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.taskqueue.RetryOptions;
 import com.google.appengine.api.taskqueue.TaskOptions;
 import org.wahlzeit.model.Photo;
+import org.wahlzeit.servlets.SessionCleanupServlet;
 
 import java.util.logging.Logger;
 
@@ -30,4 +31,20 @@ public class AsyncTaskExecutor {
 		RetryOptions retryOptions = withTaskRetryLimit(3);
 		queue.add(TaskOptions.Builder.withUrl("/persistPhoto").param(Photo.ID, photoId).retryOptions(retryOptions));
 	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Starts a task in the default queue that continues the session cleanup at the given cursor.
+	 */
+	public static void cleanupSessionsAsync(String cursor, long expiresBefore) {
+		log.info("Calling async push task to continue session cleanup");
+		Queue queue = QueueFactory.getDefaultQueue();
+		RetryOptions retryOptions = withTaskRetryLimit(3);
+		queue.add(TaskOptions.Builder.withUrl("/_ah/sessioncleanup").
+				param(SessionCleanupServlet.CLEAR, "").
+				param(SessionCleanupServlet.CURSOR, cursor).
+				param(SessionCleanupServlet.EXPIRES_BEFORE, String.valueOf(expiresBefore)).
+				retryOptions(retryOptions));
+	}
 }
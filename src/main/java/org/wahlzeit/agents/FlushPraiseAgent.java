@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.agents;
+
+import org.wahlzeit.model.PraiseCounterManager;
+import org.wahlzeit.services.LogBuilder;
+
+import java.util.logging.Logger;
+
+/**
+ * An agent class to write the praise that is still pending in memory to the datastore.
+ */
+public class FlushPraiseAgent extends Agent {
+
+	public static final String NAME = "flushPraise";
+
+	private static final Logger log = Logger.getLogger(FlushPraiseAgent.class.getName());
+
+	public FlushPraiseAgent() {
+		initialize(NAME);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void doRun() {
+		PraiseCounterManager praiseCounterManager = PraiseCounterManager.getInstance();
+		log.config(LogBuilder.createSystemMessage().
+				addParameter("pending votes", praiseCounterManager.getNoPendingVotes()).toString());
+		praiseCounterManager.flush();
+	}
+
+}
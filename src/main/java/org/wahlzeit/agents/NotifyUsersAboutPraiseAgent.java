@@ -10,6 +10,7 @@ import org.wahlzeit.services.mailing.EmailServiceManager;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -20,6 +21,11 @@ public class NotifyUsersAboutPraiseAgent extends Agent {
 
 	public static final String NAME = "notifyUsersAboutPraise";
 
+	/**
+	 * Number of photos that are looked at, and loaded if they are not cached, at a time
+	 */
+	protected static final int BATCH_SIZE = 100;
+
 	private static final Logger log = Logger.getLogger(NotifyUsersAboutPraiseAgent.class.getName());
 
 	public NotifyUsersAboutPraiseAgent() {
@@ -32,13 +38,41 @@ public class NotifyUsersAboutPraiseAgent extends Agent {
 	 * Notifies all users that want to get informed if their photos have been praised.
 	 */
 	protected void doRun() {
-		Map<PhotoId, Photo> photoCache = SingletonManager.getPhotoManager().getPhotoCache();
-		Collection<Photo> photos = photoCache.values();
+		PhotoManager photoManager = SingletonManager.getPhotoManager();
 
-		ArrayList<Photo> arrayListOfPhotos;
 		HashMap<String, ArrayList<Photo>> ownerIdPhotosMap = new HashMap<String, ArrayList<Photo>>();
+		// iterate over all photos, not only the cached ones; evicted photos are loaded again, a batch at a time
+		List<PhotoId> batch = new ArrayList<PhotoId>(BATCH_SIZE);
+		for (PhotoId photoId : photoManager.getPhotoIds()) {
+			batch.add(photoId);
+			if (batch.size() == BATCH_SIZE) {
+				addPhotosWithNewPraise(photoManager.getPhotos(batch), ownerIdPhotosMap);
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			addPhotosWithNewPraise(photoManager.getPhotos(batch), ownerIdPhotosMap);
+		}
+
+		log.config(LogBuilder.createSystemMessage().addAction("notify owner")
+				.addParameter("number of user to notify", ownerIdPhotosMap.size()).toString());
+
+		for (String ownerId : ownerIdPhotosMap.keySet()) {
+			notifyOwner(ownerId, ownerIdPhotosMap.get(ownerId));
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Adds the visible photos with new praise to the photos of their owners and marks their praise as notified.
+	 */
+	protected void addPhotosWithNewPraise(Collection<Photo> photos, Map<String, ArrayList<Photo>> ownerIdPhotosMap) {
+		PhotoManager photoManager = SingletonManager.getPhotoManager();
+
+		ArrayList<Photo> arrayListOfPhotos;
 		for (Photo photo : photos) {
-			if (photo != null && photo.isVisible() && photo.hasNewPraise()) {
+			if (photo.isVisible() && photo.hasNewPraise()) {
 				String ownerId = photo.getOwnerId();
 				if (ownerId != null) {
 					log.config(LogBuilder.createSystemMessage().addParameter("ownerId", ownerId).toString());
@@ -52,17 +86,10 @@ public class NotifyUsersAboutPraiseAgent extends Agent {
 					arrayListOfPhotos.add(photo);
 					ownerIdPhotosMap.put(ownerId, arrayListOfPhotos);
 					photo.setNoNewPraise();
-					SingletonManager.getPhotoManager().savePhoto(photo);
+					photoManager.savePhoto(photo);
 				}
 			}
 		}
-
-		log.config(LogBuilder.createSystemMessage().addAction("notify owner")
-				.addParameter("number of user to notify", ownerIdPhotosMap.size()).toString());
-
-		for (String ownerId : ownerIdPhotosMap.keySet()) {
-			notifyOwner(ownerId, ownerIdPhotosMap.get(ownerId));
-		}
 	}
 
 	/**
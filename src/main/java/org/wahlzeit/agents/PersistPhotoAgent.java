@@ -4,6 +4,7 @@ import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoManager;
 import org.wahlzeit.model.SingletonManager;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.WriteBehindBuffer;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -35,6 +36,7 @@ public class PersistPhotoAgent extends HttpServlet {
 			Photo photo = SingletonManager.getPhotoManager().getPhoto(id);
 			if (photo != null) {
 				SingletonManager.getPhotoManager().savePhoto(photo);
+				WriteBehindBuffer.getInstance().flush();
 				log.config(LogBuilder.createSystemMessage().addMessage("Photo saved.").toString());
 			} else {
 				response.setStatus(299);
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.agents;
+
+import org.wahlzeit.model.GlobalsManager;
+
+/**
+ * An agent class to write changed global ids that were not saved at the end of a request, because they changed
+ * within the save interval before a quiet period.
+ */
+public class SaveGlobalsAgent extends Agent {
+
+	public static final String NAME = "saveGlobals";
+
+	public SaveGlobalsAgent() {
+		initialize(NAME);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void doRun() {
+		GlobalsManager.getInstance().saveGlobalsIfChanged();
+	}
+
+}
@@ -67,7 +67,7 @@ public class AdminUserPhotoFormHandler extends AbstractWebFormHandler {
 		String tags = us.getAndSaveAsString(args, Photo.TAGS);
 		photo.setTags(new Tags(tags));
 		String status = us.getAndSaveAsString(args, Photo.STATUS);
-		photo.setStatus(PhotoStatus.getFromString(status));
+		SingletonManager.getPhotoManager().setPhotoStatus(photo, PhotoStatus.getFromString(status));
 
 		AsyncTaskExecutor.savePhotoAsync(id);
 
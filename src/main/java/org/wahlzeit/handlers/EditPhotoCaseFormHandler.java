@@ -26,6 +26,7 @@ import org.wahlzeit.model.PhotoCase;
 import org.wahlzeit.model.PhotoCaseManager;
 import org.wahlzeit.model.PhotoId;
 import org.wahlzeit.model.PhotoStatus;
+import org.wahlzeit.model.SingletonManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.utils.HtmlUtil;
@@ -97,7 +98,7 @@ public class EditPhotoCaseFormHandler extends AbstractWebFormHandler {
 			return PartUtil.SHOW_PHOTO_CASES_PAGE_NAME;
 		}
 
-		photo.setStatus(status);
+		SingletonManager.getPhotoManager().setPhotoStatus(photo, status);
 
 		log.info(LogBuilder.createUserMessage().
 				addAction("EditPhotoCase").
@@ -21,7 +21,12 @@
 package org.wahlzeit.handlers;
 
 import org.wahlzeit.model.AccessRights;
+import org.wahlzeit.model.ChestnutCompositionType;
+import org.wahlzeit.model.ChestnutPhotoFilter;
+import org.wahlzeit.model.ChestnutPhotoManager;
 import org.wahlzeit.model.PhotoFilter;
+import org.wahlzeit.model.PhotoManager;
+import org.wahlzeit.model.SingletonManager;
 import org.wahlzeit.model.Tags;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
@@ -38,6 +43,10 @@ public class FilterPhotosFormHandler extends AbstractWebFormHandler {
 
 	private static final Logger log = Logger.getLogger(FilterPhotosFormHandler.class.getName());
 
+	/**
+	 * Number of photos per orientation, e.g. "TOP (3), BOTTOM (0), ..."
+	 */
+	public static final String ORIENTATION_COUNTS = "orientationCounts";
 
 	/**
 	 *
@@ -54,6 +63,34 @@ public class FilterPhotosFormHandler extends AbstractWebFormHandler {
 
 		part.maskAndAddString(PhotoFilter.USER_NAME, filter.getUserName());
 		part.maskAndAddString(PhotoFilter.TAGS, filter.getTags().asString());
+		part.maskAndAddString(PhotoFilter.NEAR, filter.getNear());
+
+		if (filter instanceof ChestnutPhotoFilter) {
+			ChestnutPhotoFilter chestnutFilter = (ChestnutPhotoFilter) filter;
+			part.maskAndAddString(ChestnutPhotoFilter.ORIENTATION, chestnutFilter.getOrientationAsString());
+			part.maskAndAddString(ChestnutPhotoFilter.MIN_COUNT, chestnutFilter.getMinCountAsString());
+		}
+
+		PhotoManager photoManager = SingletonManager.getPhotoManager();
+		if (photoManager instanceof ChestnutPhotoManager) {
+			Map<ChestnutCompositionType.Orientation, Integer> counts =
+					((ChestnutPhotoManager) photoManager).getFacetIndex().getOrientationCounts();
+			part.maskAndAddString(ORIENTATION_COUNTS, asOrientationCounts(counts));
+		}
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected String asOrientationCounts(Map<ChestnutCompositionType.Orientation, Integer> counts) {
+		StringBuilder result = new StringBuilder();
+		for (Map.Entry<ChestnutCompositionType.Orientation, Integer> entry : counts.entrySet()) {
+			if (result.length() > 0) {
+				result.append(", ");
+			}
+			result.append(entry.getKey().name()).append(" (").append(entry.getValue()).append(")");
+		}
+		return result.toString();
 	}
 
 	/**
@@ -72,9 +109,32 @@ public class FilterPhotosFormHandler extends AbstractWebFormHandler {
 			filter.setTags(new Tags(tags));
 		}
 
+		String near = us.getAsString(args, PhotoFilter.NEAR);
+		try {
+			filter.setNear(near);
+		} catch (IllegalArgumentException ex) {
+			log.info(LogBuilder.createUserMessage().addException("ignore illegal near condition", ex).toString());
+		}
+
+		if (filter instanceof ChestnutPhotoFilter) {
+			ChestnutPhotoFilter chestnutFilter = (ChestnutPhotoFilter) filter;
+			try {
+				chestnutFilter.setOrientation(us.getAsString(args, ChestnutPhotoFilter.ORIENTATION));
+			} catch (IllegalArgumentException ex) {
+				log.info(LogBuilder.createUserMessage().addException("ignore illegal orientation", ex).toString());
+			}
+			try {
+				chestnutFilter.setMinCount(us.getAsString(args, ChestnutPhotoFilter.MIN_COUNT));
+			} catch (IllegalArgumentException ex) {
+				log.info(LogBuilder.createUserMessage().addException("ignore illegal chestnut count", ex).toString());
+			}
+		}
+
 		log.info(LogBuilder.createUserMessage().
 				addAction("Filter Photos").
-				addParameter("Tags", filter.getTags().asString()).toString());
+				addParameter("Tags", filter.getTags().asString()).
+				addParameter("Near", filter.getNear()).
+				addParameter("Conditions", filter.getFilterConditions()).toString());
 
 
 		return PartUtil.SHOW_PHOTO_PAGE_NAME;
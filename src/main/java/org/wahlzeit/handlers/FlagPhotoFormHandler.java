@@ -92,7 +92,7 @@ public class FlagPhotoFormHandler extends AbstractWebFormHandler {
 		}
 
 		Photo photo = SingletonManager.getPhotoManager().getPhoto(id);
-		photo.setStatus(photo.getStatus().asFlagged(true));
+		SingletonManager.getPhotoManager().setPhotoStatus(photo, photo.getStatus().asFlagged(true));
 		AsyncTaskExecutor.savePhotoAsync(id);
 
 		PhotoCase photoCase = new PhotoCase(photo);
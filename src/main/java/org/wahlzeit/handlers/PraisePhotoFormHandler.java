@@ -78,6 +78,7 @@ public class PraisePhotoFormHandler extends AbstractWebFormHandler {
 				int value = Integer.parseInt(praise);
 				photo.addToPraise(value);
 				client.addPraisedPhotoId(photo.getId());
+				UserManager.getInstance().persistClient(client);
 				us.addProcessedPhoto(photo);
 				wasPraised = true;
 			}
@@ -21,8 +21,10 @@
 package org.wahlzeit.handlers;
 
 import org.wahlzeit.model.AccessRights;
+import org.wahlzeit.model.Client;
 import org.wahlzeit.model.LanguageConfigs;
 import org.wahlzeit.model.ModelConfig;
+import org.wahlzeit.model.UserManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.utils.HtmlUtil;
@@ -57,7 +59,9 @@ public class SetLanguagePageHandler extends AbstractWebPageHandler {
 			result = LanguageConfigs.get(Language.JAPANESE);
 		}
 
-		us.getClient().setLanguage(result.getLanguage());
+		Client client = us.getClient();
+		client.setLanguage(result.getLanguage());
+		UserManager.getInstance().persistClient(client);
 
 		return link;
 	}
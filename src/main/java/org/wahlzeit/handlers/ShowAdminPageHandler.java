@@ -23,6 +23,7 @@ package org.wahlzeit.handlers;
 import org.wahlzeit.main.ServiceMain;
 import org.wahlzeit.model.*;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.WriteStatistics;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 import org.wahlzeit.webparts.Writable;
@@ -50,6 +51,7 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 	protected void makeWebPageBody(UserSession us, WebPart page) {
 		Map args = us.getSavedArgs();
 		page.addStringFromArgs(args, UserSession.MESSAGE);
+		page.addString("noPendingVotes", String.valueOf(PraiseCounterManager.getInstance().getNoPendingVotes()));
 
 		Object userId = us.getSavedArg("userId");
 		if (!StringUtil.isNullOrEmptyString(userId)) {
@@ -156,12 +158,13 @@ public class ShowAdminPageHandler extends AbstractWebPageHandler implements WebF
 		log.info(LogBuilder.createSystemMessage().addAction("save all objects").toString());
 
 		try {
-			ServiceMain.getInstance().saveAll();
+			WriteStatistics statistics = ServiceMain.getInstance().saveAll();
+			us.setMessage("Saved " + statistics.asString() + "...");
 		} catch (Exception ex) {
 			log.warning(LogBuilder.createSystemMessage().addException("saving all objects failed", ex).toString());
+			us.setMessage("Saving objects failed...");
 		}
 
-		us.setMessage("Saved objects...");
 		return PartUtil.SHOW_NOTE_PAGE_NAME;
 	}
 
@@ -26,6 +26,8 @@ import org.wahlzeit.model.*;
 import org.wahlzeit.model.persistence.DatastoreAdapter;
 import org.wahlzeit.model.persistence.ImageStorage;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.WriteBehindBuffer;
+import org.wahlzeit.services.WriteStatistics;
 
 import java.io.File;
 import java.io.FileFilter;
@@ -78,11 +80,19 @@ public abstract class ModelMain extends AbstractMain {
 	/**
 	 *
 	 */
-	public void saveAll() throws IOException{
-		PhotoCaseManager.getInstance().savePhotoCases();
-		SingletonManager.getPhotoManager().savePhotos();
-		UserManager.getInstance().saveClients();
+	public WriteStatistics saveAll() throws IOException{
+		WriteStatistics result = new WriteStatistics();
+		result.addAll(PhotoCaseManager.getInstance().savePhotoCases());
+		result.addAll(SingletonManager.getPhotoManager().savePhotos());
+		result.addAll(UserManager.getInstance().saveClients());
 		GlobalsManager.getInstance().saveGlobals();
+		PraiseCounterManager.getInstance().flush();
+		WriteBehindBuffer.getInstance().flush();
+
+		log.info(LogBuilder.createSystemMessage().addAction("save all").
+				addParameter("written objects", result.getNoObjects()).
+				addParameter("written bytes", result.getNoBytes()).toString());
+		return result;
 	}
 
 	/**
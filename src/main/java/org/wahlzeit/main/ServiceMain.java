@@ -20,6 +20,7 @@
 
 package org.wahlzeit.main;
 
+import com.google.appengine.api.LifecycleManager;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.VoidWork;
 import org.wahlzeit.handlers.*;
@@ -112,9 +113,37 @@ public class ServiceMain extends ModelMain {
 		log.config(LogBuilder.createSystemMessage().addAction("Add default user with pictures").toString());
 		addDefaultUserWithPictures();
 
+		if (inProduction) {
+			log.config(LogBuilder.createSystemMessage().addAction("Set shutdown hook").toString());
+			setShutdownHook();
+		}
+
 		log.config(LogBuilder.createSystemMessage().addMessage("StartUp complete.").toString());
 	}
 
+	/**
+	 * Saves pending changes, e.g. votes that have not been flushed, when App Engine stops the instance. The hook is
+	 * only called for instances that are shut down regularly and has to finish within the shutdown deadline.
+	 */
+	protected void setShutdownHook() {
+		LifecycleManager.getInstance().setShutdownHook(new LifecycleManager.ShutdownHook() {
+			@Override
+			public void shutdown() {
+				ObjectifyService.run(new VoidWork() {
+					@Override
+					public void vrun() {
+						try {
+							saveAll();
+						} catch (Exception ex) {
+							log.warning(LogBuilder.createSystemMessage().
+									addException("Saving at shutdown failed", ex).toString());
+						}
+					}
+				});
+			}
+		});
+	}
+
 	/**
 	 *
 	 */
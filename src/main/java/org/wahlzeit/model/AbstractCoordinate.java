@@ -31,6 +31,11 @@ import org.wahlzeit.utils.PatternInstance;
     }
 )
 public abstract class AbstractCoordinate implements Coordinate {
+    /**
+     * Maximum sum of the absolute differences of the Cartesian values of two coordinates that are considered equal
+     */
+    static final double EQUALITY_THRESHOLD = 1e-5;
+
     /**
      * Checks whether object is in a valid state.
      *
@@ -110,13 +115,11 @@ public abstract class AbstractCoordinate implements Coordinate {
         CartesianCoordinate cartesianThis = asCartesianCoordinate();
         CartesianCoordinate cartesianOther = other.asCartesianCoordinate();
 
-        double threshold = 1e-5;
-
         double xDiff = Math.abs(cartesianOther.getX() - cartesianThis.getX());
         double yDiff = Math.abs(cartesianOther.getY() - cartesianThis.getY());
         double zDiff = Math.abs(cartesianOther.getZ() - cartesianThis.getZ());
 
-        boolean result = (xDiff + yDiff + zDiff) < threshold;
+        boolean result = (xDiff + yDiff + zDiff) < EQUALITY_THRESHOLD;
 
         assertClassInvariants();
 
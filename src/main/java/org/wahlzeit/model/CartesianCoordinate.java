@@ -36,6 +36,9 @@ public class CartesianCoordinate extends AbstractCoordinate {
     private final double y;
     private final double z;
 
+    // the cached spheric representation, computed once on first use; racy but benign, as all are equal
+    private volatile SphericCoordinate sphericCoordinate = null;
+
     /**
      * Checks whether object is in a valid state.
      *
@@ -112,6 +115,16 @@ public class CartesianCoordinate extends AbstractCoordinate {
         return this;
     }
 
+    /**
+     * Sets the spheric representation, if it has not been computed yet.
+     *
+     * @methodtype set
+     */
+    void setSphericCoordinate(SphericCoordinate sphericCoordinate) {
+        if (this.sphericCoordinate == null)
+            this.sphericCoordinate = sphericCoordinate;
+    }
+
     /**
      * "Convert" current instance into SphericCoordinate
      *
@@ -120,13 +133,18 @@ public class CartesianCoordinate extends AbstractCoordinate {
     public SphericCoordinate asSphericCoordinate() {
         assertClassInvariants();
 
+        SphericCoordinate cached = sphericCoordinate;
+        if (cached != null)
+            return cached;
+
         // calculate radius, phi and theta values from own values
         double radius = Math.sqrt(Math.pow(x, 2) + Math.pow(y, 2) + Math.pow(z, 2));
         double theta = Math.acos(z / radius);
         double phi = Math.atan2(y, x);
 
-        // use these values to construct new SphericCoordinate
-        SphericCoordinate result = new SphericCoordinate(phi, theta, radius);
+        // use these values to get the cached SphericCoordinate
+        SphericCoordinate result = CoordinateService.getSphericCoordinate(phi, theta, radius);
+        sphericCoordinate = result;
 
         // post conditions
         assertNotNaN(radius);
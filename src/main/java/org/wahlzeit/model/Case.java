@@ -47,6 +47,15 @@ public abstract class Case extends DataObject {
 		lastCaseId = newId;
 	}
 
+	/**
+	 * @methodtype command
+	 */
+	public static synchronized void raiseLastCaseId(int minId) {
+		if (lastCaseId.asInt() < minId) {
+			lastCaseId = new CaseId(minId);
+		}
+	}
+
 	/**
 	 * @methodtype idiom
 	 */
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory facet index over the compositions of chestnut photos: maps each orientation to the ids of the photos
+ * with that orientation, and keeps the ids by chestnut count in ascending order, so that conditions like
+ * "orientation:TOP count>=5" and the number of photos per facet need neither queries nor a scan of the photo cache.
+ */
+public class ChestnutFacetIndex {
+
+	/**
+	 *
+	 */
+	protected final Map<ChestnutCompositionType.Orientation, PhotoIdSet> photoIdsByOrientation =
+			new EnumMap<ChestnutCompositionType.Orientation, PhotoIdSet>(ChestnutCompositionType.Orientation.class);
+	protected final TreeMap<Integer, PhotoIdSet> photoIdsByCount = new TreeMap<Integer, PhotoIdSet>();
+	protected final Map<PhotoId, Facets> facetsByPhotoId = new HashMap<PhotoId, Facets>();
+
+	/**
+	 *
+	 */
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Replaces the facets of the photo with those of the composition; null removes the photo.
+	 *
+	 * @methodtype command
+	 */
+	public void setComposition(PhotoId photoId, ChestnutComposition composition) {
+		if (composition == null) {
+			removePhoto(photoId);
+			return;
+		}
+
+		Facets newFacets = new Facets(composition.getType().getOrientation(), composition.getChestnutCount());
+
+		lock.writeLock().lock();
+		try {
+			Facets oldFacets = facetsByPhotoId.put(photoId, newFacets);
+			if (newFacets.equals(oldFacets)) {
+				return;
+			}
+			if (oldFacets != null) {
+				doRemove(oldFacets, photoId);
+			}
+			doAdd(newFacets, photoId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void removePhoto(PhotoId photoId) {
+		lock.writeLock().lock();
+		try {
+			Facets oldFacets = facetsByPhotoId.remove(photoId);
+			if (oldFacets != null) {
+				doRemove(oldFacets, photoId);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			photoIdsByOrientation.clear();
+			photoIdsByCount.clear();
+			facetsByPhotoId.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasPhoto(PhotoId photoId) {
+		lock.readLock().lock();
+		try {
+			return facetsByPhotoId.containsKey(photoId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPhotos() {
+		lock.readLock().lock();
+		try {
+			return facetsByPhotoId.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a copy of the ids of all photos with the given orientation.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoIdSet getPhotoIds(ChestnutCompositionType.Orientation orientation) {
+		lock.readLock().lock();
+		try {
+			PhotoIdSet photoIds = photoIdsByOrientation.get(orientation);
+			return (photoIds != null) ? new PhotoIdSet(photoIds) : new PhotoIdSet();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the ids of all photos showing at least minCount chestnuts.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoIdSet getPhotoIdsWithMinCount(int minCount) {
+		PhotoIdSet result = new PhotoIdSet();
+
+		lock.readLock().lock();
+		try {
+			for (PhotoIdSet photoIds : photoIdsByCount.tailMap(minCount, true).values()) {
+				result.addAll(photoIds);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of photos per orientation, including orientations without photos.
+	 *
+	 * @methodtype get
+	 */
+	public Map<ChestnutCompositionType.Orientation, Integer> getOrientationCounts() {
+		Map<ChestnutCompositionType.Orientation, Integer> result =
+				new EnumMap<ChestnutCompositionType.Orientation, Integer>(ChestnutCompositionType.Orientation.class);
+
+		lock.readLock().lock();
+		try {
+			for (ChestnutCompositionType.Orientation orientation : ChestnutCompositionType.Orientation.values()) {
+				PhotoIdSet photoIds = photoIdsByOrientation.get(orientation);
+				result.put(orientation, (photoIds != null) ? photoIds.size() : 0);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of photos per chestnut count, in ascending order of the count.
+	 *
+	 * @methodtype get
+	 */
+	public SortedMap<Integer, Integer> getCountHistogram() {
+		SortedMap<Integer, Integer> result = new TreeMap<Integer, Integer>();
+
+		lock.readLock().lock();
+		try {
+			for (Map.Entry<Integer, PhotoIdSet> entry : photoIdsByCount.entrySet()) {
+				result.put(entry.getKey(), entry.getValue().size());
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doAdd(Facets facets, PhotoId photoId) {
+		PhotoIdSet orientationIds = photoIdsByOrientation.get(facets.orientation);
+		if (orientationIds == null) {
+			orientationIds = new PhotoIdSet();
+			photoIdsByOrientation.put(facets.orientation, orientationIds);
+		}
+		orientationIds.add(photoId);
+
+		PhotoIdSet countIds = photoIdsByCount.get(facets.count);
+		if (countIds == null) {
+			countIds = new PhotoIdSet();
+			photoIdsByCount.put(facets.count, countIds);
+		}
+		countIds.add(photoId);
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doRemove(Facets facets, PhotoId photoId) {
+		PhotoIdSet orientationIds = photoIdsByOrientation.get(facets.orientation);
+		if (orientationIds != null) {
+			orientationIds.remove(photoId);
+			if (orientationIds.isEmpty()) {
+				photoIdsByOrientation.remove(facets.orientation);
+			}
+		}
+
+		PhotoIdSet countIds = photoIdsByCount.get(facets.count);
+		if (countIds != null) {
+			countIds.remove(photoId);
+			if (countIds.isEmpty()) {
+				photoIdsByCount.remove(facets.count);
+			}
+		}
+	}
+
+	/**
+	 * The indexed values of one composition
+	 */
+	protected static class Facets {
+
+		protected final ChestnutCompositionType.Orientation orientation;
+		protected final int count;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected Facets(ChestnutCompositionType.Orientation orientation, int count) {
+			this.orientation = orientation;
+			this.count = count;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Facets)) {
+				return false;
+			}
+			Facets other = (Facets) obj;
+			return orientation == other.orientation && count == other.count;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * orientation.hashCode() + count;
+		}
+	}
+
+}
@@ -60,13 +60,12 @@ public class ChestnutPhoto extends Photo {
     }
 
     /**
+     * Used by Objectify to load chestnut photos, whose fields are set afterwards; does not take a new id.
+     *
      * @methodtype constructor
      */
-    public ChestnutPhoto() {
+    protected ChestnutPhoto() {
         super();
-
-        assertClassInvariants();
-        assertSubClassInvariants();
     }
 
     /**
@@ -45,7 +45,7 @@ public class ChestnutPhotoFactory extends PhotoFactory {
      * @methodtype factory
      */
     public Photo createPhoto() {
-        return new ChestnutPhoto();
+        return new ChestnutPhoto(PhotoId.getNextId());
     }
 
     /**
@@ -58,4 +58,11 @@ public class ChestnutPhotoFactory extends PhotoFactory {
 
         return new ChestnutPhoto(id);
     }
+
+    /**
+     * @methodtype factory
+     */
+    public PhotoFilter createPhotoFilter() {
+        return new ChestnutPhotoFilter();
+    }
 }
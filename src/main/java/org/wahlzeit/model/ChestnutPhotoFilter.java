@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.wahlzeit.utils.StringUtil;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A photo filter that can also select chestnut photos by their composition, e.g. with the conditions
+ * "orientation:TOP" and "count>=5". The composition conditions restrict the photos matching the tag conditions and
+ * are looked up in the ChestnutFacetIndex of the ChestnutPhotoManager.
+ */
+public class ChestnutPhotoFilter extends PhotoFilter {
+
+	/**
+	 *
+	 */
+	public static final String ORIENTATION = "orientation";
+	public static final String MIN_COUNT = "minCount";
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Prefixes of the composition conditions
+	 */
+	public static final String ORIENTATION_PREFIX = "orientation:";
+	public static final String MIN_COUNT_PREFIX = "count>=";
+
+	/**
+	 * The orientation condition is unset if null, the count condition is unset if the minimum count is negative
+	 */
+	protected ChestnutCompositionType.Orientation orientation = null;
+	protected int minCount = -1;
+
+	/**
+	 *
+	 */
+	public ChestnutPhotoFilter() {
+		super();
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	public void clear() {
+		clearOrientation();
+		clearMinCount();
+		super.clear();
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasOrientation() {
+		return orientation != null;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public ChestnutCompositionType.Orientation getOrientation() {
+		return orientation;
+	}
+
+	/**
+	 * Returns the orientation condition as the name of the orientation, an empty string if it is not set.
+	 *
+	 * @methodtype get
+	 */
+	public String getOrientationAsString() {
+		return hasOrientation() ? orientation.name() : "";
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setOrientation(ChestnutCompositionType.Orientation newOrientation) {
+		orientation = newOrientation;
+		resetDisplayablePhotoIds();
+	}
+
+	/**
+	 * Sets the orientation condition from the name of the orientation, ignoring case; an empty string clears it.
+	 *
+	 * @methodtype set
+	 */
+	public void setOrientation(String newOrientation) throws IllegalArgumentException {
+		if (StringUtil.isNullOrEmptyString(newOrientation)) {
+			clearOrientation();
+			return;
+		}
+
+		try {
+			setOrientation(ChestnutCompositionType.Orientation.valueOf(newOrientation.trim().toUpperCase(Locale.ENGLISH)));
+		} catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("unknown orientation: " + newOrientation, ex);
+		}
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void clearOrientation() {
+		setOrientation((ChestnutCompositionType.Orientation) null);
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasMinCount() {
+		return minCount >= 0;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getMinCount() {
+		return minCount;
+	}
+
+	/**
+	 * Returns the count condition as a number, an empty string if it is not set.
+	 *
+	 * @methodtype get
+	 */
+	public String getMinCountAsString() {
+		return hasMinCount() ? String.valueOf(minCount) : "";
+	}
+
+	/**
+	 * Restricts the photos to those showing at least the given number of chestnuts.
+	 *
+	 * @methodtype set
+	 */
+	public void setMinCount(int newMinCount) {
+		if (newMinCount < 0) {
+			throw new IllegalArgumentException("minCount should not be negative");
+		}
+
+		minCount = newMinCount;
+		resetDisplayablePhotoIds();
+	}
+
+	/**
+	 * Sets the count condition from a number; an empty string clears it.
+	 *
+	 * @methodtype set
+	 */
+	public void setMinCount(String newMinCount) throws IllegalArgumentException {
+		if (StringUtil.isNullOrEmptyString(newMinCount)) {
+			clearMinCount();
+			return;
+		}
+
+		try {
+			setMinCount(Integer.parseInt(newMinCount.trim()));
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("minCount should be a number: " + newMinCount, ex);
+		}
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void clearMinCount() {
+		minCount = -1;
+		resetDisplayablePhotoIds();
+	}
+
+	/**
+	 *
+	 */
+	@Override
+	protected void collectFilterConditions(List<String> filterConditions) {
+		super.collectFilterConditions(filterConditions);
+
+		if (hasOrientation()) {
+			filterConditions.add(ORIENTATION_PREFIX + getOrientationAsString());
+		}
+		if (hasMinCount()) {
+			filterConditions.add(MIN_COUNT_PREFIX + getMinCountAsString());
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	@Override
+	protected boolean isTagCondition(String condition) {
+		return super.isTagCondition(condition) && !condition.startsWith(ORIENTATION_PREFIX)
+				&& !condition.startsWith(MIN_COUNT_PREFIX);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	@Override
+	protected PhotoIdSet restrictPhotoIds(PhotoIdSet candidates, PhotoManager photoManager) {
+		candidates = super.restrictPhotoIds(candidates, photoManager);
+		if (!hasOrientation() && !hasMinCount()) {
+			return candidates;
+		}
+
+		if (!(photoManager instanceof ChestnutPhotoManager)) {
+			// without chestnut photos no photo has a composition
+			return new PhotoIdSet();
+		}
+
+		ChestnutFacetIndex facetIndex = ((ChestnutPhotoManager) photoManager).getFacetIndex();
+		if (hasOrientation()) {
+			candidates = intersect(candidates, facetIndex.getPhotoIds(orientation));
+		}
+		if (hasMinCount()) {
+			candidates = intersect(candidates, facetIndex.getPhotoIdsWithMinCount(minCount));
+		}
+		return candidates;
+	}
+
+}
@@ -40,6 +40,11 @@ import java.util.Collection;
 	}
 )
 public class ChestnutPhotoManager extends PhotoManager {
+    /**
+     * Orientation and chestnut count of all known photos, maintained on add and on composition changes
+     */
+    protected final ChestnutFacetIndex facetIndex = new ChestnutFacetIndex();
+
     /**
      * @methodtype constructor
      */
@@ -65,7 +70,9 @@ public class ChestnutPhotoManager extends PhotoManager {
         if (result == null) {
             result = SingletonManager.getPhotoFactory().loadPhoto(id);
             if (result != null) {
-                doAddPhoto(result);
+                result.resetWriteCount(); // just loaded, nothing to write back
+                result = doAddPhotoIfAbsent(result);
+                indexTags(result);
             }
         }
 
@@ -77,7 +84,8 @@ public class ChestnutPhotoManager extends PhotoManager {
     /**
      * @methodtype command
      *
-     * Load all persisted photos. Executed when Wahlzeit is restarted.
+     * Load all persisted photos. Executed when Wahlzeit is restarted. Images are not loaded here, they are read on
+     * demand when they are first requested.
      */
     public void loadPhotos() {
 		assertClassInvariants();
@@ -87,6 +95,7 @@ public class ChestnutPhotoManager extends PhotoManager {
             public Collection<ChestnutPhoto> run() {
                 Collection<ChestnutPhoto> existingPhotos = new ArrayList<ChestnutPhoto>();
                 readObjects(existingPhotos, ChestnutPhoto.class);
+                migrateLegacyKeys(existingPhotos);
                 return existingPhotos;
             }
         });
@@ -95,11 +104,13 @@ public class ChestnutPhotoManager extends PhotoManager {
             if (!doHasPhoto(photo.getId())) {
                 log.config(LogBuilder.createSystemMessage().
                         addParameter("Load Photo with ID", photo.getIdAsString()).toString());
-                loadScaledImages(photo);
+                photo.resetWriteCount(); // just loaded, nothing to write back
                 doAddPhoto(photo);
+                indexTags(photo);
             } else {
                 log.config(LogBuilder.createSystemMessage().
                         addParameter("Already loaded Photo", photo.getIdAsString()).toString());
+                photo.resetWriteCount(); // stale duplicate of the cached photo, must never be written
             }
         }
 
@@ -107,4 +118,64 @@ public class ChestnutPhotoManager extends PhotoManager {
 
 		assertClassInvariants();
     }
+
+    /**
+     * @methodtype command
+     * @methodproperties primitive
+     */
+    @Override
+    protected void doAddPhoto(Photo myPhoto) {
+        super.doAddPhoto(myPhoto);
+        indexComposition(myPhoto);
+    }
+
+    /**
+     * @methodtype command
+     * @methodproperties primitive
+     */
+    @Override
+    protected Photo doAddPhotoIfAbsent(Photo myPhoto) {
+        Photo result = super.doAddPhotoIfAbsent(myPhoto);
+        indexComposition(result);
+
+        return result;
+    }
+
+    /**
+     * Sets the composition of the photo and updates the facet index accordingly.
+     *
+     * @methodtype set
+     */
+    public void setPhotoComposition(ChestnutPhoto photo, ChestnutComposition composition) {
+        photo.setComposition(composition);
+        updateComposition(photo);
+    }
+
+    /**
+     * Called after the composition of a chestnut photo has changed.
+     *
+     * @methodtype command
+     */
+    public void updateComposition(ChestnutPhoto photo) {
+        if (photo.getId() != null && knownPhotoIds.contains(photo.getId())) {
+            indexComposition(photo);
+        }
+    }
+
+    /**
+     * @methodtype get
+     */
+    public ChestnutFacetIndex getFacetIndex() {
+        return facetIndex;
+    }
+
+    /**
+     * @methodtype command
+     * @methodproperties primitive
+     */
+    protected void indexComposition(Photo photo) {
+        if (photo instanceof ChestnutPhoto) {
+            facetIndex.setComposition(photo.getId(), ((ChestnutPhoto) photo).getComposition());
+        }
+    }
 }
@@ -25,6 +25,7 @@ import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Ignore;
 import com.googlecode.objectify.annotation.Parent;
+import org.wahlzeit.services.DirtyObjectTracker;
 import org.wahlzeit.services.EmailAddress;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.services.ObjectManager;
@@ -66,6 +67,12 @@ public abstract class Client implements Serializable, Persistent {
 	@Ignore
 	protected int writeCount = 0;
 
+	/**
+	 * An ephemeral client lives in memory only and is not written to the datastore, see ClientManager.persistClient
+	 */
+	@Ignore
+	protected boolean isEphemeral = false;
+
 	private String httpSessionId;
 
 	protected Language language = Language.ENGLISH;
@@ -187,24 +194,63 @@ public abstract class Client implements Serializable, Persistent {
 	}
 
 	/**
+	 * Known users are indexed by their email address, so change it through UserManager.setEmailAddress.
 	 *
+	 * @methodtype set
+	 */
+	public void setEmailAddress(EmailAddress emailAddress) {
+		this.emailAddress = emailAddress;
+		incWriteCount();
+	}
+
+	/**
+	 * Ephemeral clients are never dirty, so no save path writes them; their changes are kept by the write count.
 	 */
 	public boolean isDirty() {
-		return writeCount != 0;
+		return writeCount != 0 && !isEphemeral;
+	}
+
+	/**
+	 * Gives an ephemeral client the id it is written with, see ClientManager.persistClient. Clients keep their id by
+	 * default.
+	 *
+	 * @methodtype set
+	 */
+	protected void setPersistentId(Long clientId) {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEphemeral() {
+		return isEphemeral;
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void setEphemeral(boolean isEphemeral) {
+		this.isEphemeral = isEphemeral;
 	}
 
 	/**
 	 *
 	 */
 	public void incWriteCount() {
-		writeCount++;
+		if (writeCount++ == 0) {
+			DirtyObjectTracker.getInstance().markDirty(this);
+		}
 	}
 
 	/**
 	 *
 	 */
 	public void resetWriteCount() {
-		writeCount = 0;
+		if (writeCount != 0) {
+			writeCount = 0;
+			DirtyObjectTracker.getInstance().markClean(this);
+		}
 	}
 
 	/**
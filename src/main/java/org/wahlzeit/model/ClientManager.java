@@ -2,11 +2,14 @@ package org.wahlzeit.model;
 
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.WriteStatistics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 /**
@@ -26,11 +29,14 @@ public abstract class ClientManager extends ObjectManager {
 	/**
 	 * Maps IDs to user
 	 */
-	protected Map<String, Client> idClientMap = new HashMap<String, Client>();
+	protected final ConcurrentMap<String, Client> idClientMap = new ConcurrentHashMap<String, Client>();
 
-	protected HashMap<String, Client> httpSessionIdToClientMap = new HashMap<String, Client>();
+	protected final ConcurrentMap<String, Client> httpSessionIdToClientMap = new ConcurrentHashMap<String, Client>();
 
-	protected List<String> listOfUsedNicknames = new ArrayList<String>();
+	/**
+	 * Nicknames of all known clients; adding a nickname reserves it atomically
+	 */
+	protected final Set<String> usedNicknames = ConcurrentHashMap.newKeySet();
 
 
 	// add methods -----------------------------------------------------------------------------------------------------
@@ -42,9 +48,16 @@ public abstract class ClientManager extends ObjectManager {
 	public void addClient(Client client) throws IllegalArgumentException {
 		assertIsNonNullArgument(client);
 		assertIsUnknownClientAsIllegalArgument(client);
-		assertNicknameIsNotUsed(client.getNickName());
+		reserveNickname(client.getNickName());
 
-		doAddClient(client);
+		if (idClientMap.putIfAbsent(client.getId(), client) != null) {
+			usedNicknames.remove(client.getNickName());
+			throw new IllegalArgumentException(client.getId() + " is already known");
+		}
+		addToIndexes(client);
+
+		writeObject(client);
+		log.config(LogBuilder.createSystemMessage().addParameter("Added new user", client.getId()).toString());
 	}
 
 	/**
@@ -60,20 +73,65 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodtype assertion
 	 */
 	protected void assertNicknameIsNotUsed(String nickName) {
-		if (listOfUsedNicknames.contains(nickName)) {
+		if (nickName != null && usedNicknames.contains(nickName)) {
+			throw new IllegalArgumentException("Nickname " + nickName + " is already used.");
+		}
+	}
+
+	/**
+	 * Checks and marks the nickname as used in one step, so two clients cannot claim it concurrently.
+	 *
+	 * @methodtype command
+	 */
+	protected void reserveNickname(String nickName) throws IllegalArgumentException {
+		assertIsNonNullArgument(nickName, "nickName");
+		if (!usedNicknames.add(nickName)) {
 			throw new IllegalArgumentException("Nickname " + nickName + " is already used.");
 		}
 	}
 
 	/**
+	 * Adds a client read from the datastore, unless a client with its id is known already, and returns the known
+	 * client.
+	 *
 	 * @methodtype set
 	 * @methodproperty primitive
 	 */
-	protected void doAddClient(Client client) {
-		idClientMap.put(client.getId(), client);
+	protected Client doAddClient(Client client) throws IllegalArgumentException {
+		Client current = idClientMap.putIfAbsent(client.getId(), client);
+		if (current != null) {
+			return current;
+		}
+
+		if (client.getNickName() != null) {
+			try {
+				reserveNickname(client.getNickName());
+			} catch (IllegalArgumentException ex) {
+				idClientMap.remove(client.getId(), client);
+				throw ex;
+			}
+		}
+		addToIndexes(client);
+
 		writeObject(client);
-		listOfUsedNicknames.add(client.getNickName());
 		log.config(LogBuilder.createSystemMessage().addParameter("Added new user", client.getId()).toString());
+		return client;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected void addToIndexes(Client client) {
+		// overwrite if you keep additional indexes of clients
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected void removeFromIndexes(Client client) {
+		// overwrite if you keep additional indexes of clients
 	}
 
 	/**
@@ -113,7 +171,7 @@ public abstract class ClientManager extends ObjectManager {
 	public void addHttpSessionIdToClientMapping(String httpSessionId, Client client) {
 		assertIsNonNullArgument(httpSessionId);
 		assertIsNonNullArgument(client);
-		assert !httpSessionIdToClientMap.containsKey(httpSessionId);
+		assert httpSessionIdToClientMap.get(httpSessionId) == null;
 
 		doAddHttpSessionIdToClientMapping(httpSessionId, client);
 
@@ -142,6 +200,57 @@ public abstract class ClientManager extends ObjectManager {
 	}
 
 
+	/**
+	 * Turns an ephemeral client into one that is written to the datastore, including its changes so far. Only now it
+	 * takes a client id. Persistent clients are only written if they have changed.
+	 *
+	 * @methodtype command
+	 */
+	public void persistClient(Client client) {
+		assertIsNonNullArgument(client);
+
+		synchronized (client) {
+			if (client.isEphemeral()) {
+				String ephemeralId = client.getId();
+				doAssignPersistentId(client);
+				client.setEphemeral(false);
+				client.incWriteCount();
+				log.config(LogBuilder.createSystemMessage().
+						addParameter("persist client", ephemeralId).
+						addParameter("as", client.getId()).toString());
+			}
+		}
+		if (client.isDirty()) {
+			saveClient(client);
+		}
+	}
+
+	/**
+	 * Gives the client its persistent id and moves it to that id in the in-memory maps.
+	 *
+	 * @methodtype set
+	 * @methodproperty primitive
+	 */
+	protected void doAssignPersistentId(Client client) {
+		String ephemeralId = client.getId();
+		String ephemeralNickName = client.getNickName();
+		boolean isKnown = idClientMap.remove(ephemeralId, client);
+		if (isKnown) {
+			removeFromIndexes(client);
+		}
+
+		client.setPersistentId(getNextClientId());
+
+		if (client.getNickName() != null && !client.getNickName().equals(ephemeralNickName)) {
+			changeNickname(ephemeralNickName, client.getNickName());
+		}
+		if (isKnown) {
+			idClientMap.put(client.getId(), client);
+			addToIndexes(client);
+		}
+	}
+
+
 	// save methods ----------------------------------------------------------------------------------------------------
 
 	/**
@@ -154,10 +263,18 @@ public abstract class ClientManager extends ObjectManager {
 	}
 
 	/**
+	 * Saves the dirty clients of the registry; other dirty Client instances, e.g. stale copies, are not written.
+	 *
 	 * @methodtype command
 	 */
-	public void saveClients() {
-		updateObjects(idClientMap.values());
+	public WriteStatistics saveClients() {
+		List<Client> dirtyClients = new ArrayList<Client>();
+		for (Client client : getDirtyObjects(Client.class)) {
+			if (idClientMap.get(client.getId()) == client) {
+				dirtyClients.add(client);
+			}
+		}
+		return writeObjects(dirtyClients);
 	}
 
 
@@ -177,6 +294,15 @@ public abstract class ClientManager extends ObjectManager {
 		lastClientId = newId;
 	}
 
+	/**
+	 * @methodtype command Raises the last client id to minId, if it is smaller, e.g. after another instance used ids
+	 */
+	public synchronized void raiseLastClientId(Long minId) {
+		if (minId != null && (lastClientId == null || lastClientId < minId)) {
+			lastClientId = minId;
+		}
+	}
+
 	/**
 	 * @methodtype get
 	 */
@@ -192,7 +318,7 @@ public abstract class ClientManager extends ObjectManager {
 	 */
 	public void removeClient(Client client) {
 		saveClient(client);
-		idClientMap.remove(client.getId());
+		doForgetClient(client);
 	}
 
 	/**
@@ -201,7 +327,7 @@ public abstract class ClientManager extends ObjectManager {
 	 */
 	public void deleteClient(Client client) {
 		assertIsNonNullArgument(client);
-		assert idClientMap.containsValue(client);
+		assert idClientMap.get(client.getId()) == client;
 
 		removeHttpSessionIdToClientMapping(client.getHttpSessionId());
 		doDeleteClient(client);
@@ -209,14 +335,41 @@ public abstract class ClientManager extends ObjectManager {
 		assertIsUnknownUserAsIllegalState(client);
 	}
 
+	/**
+	 * Deletes all given clients with one batched datastore delete.
+	 *
+	 * @methodtype set
+	 */
+	public void deleteClients(Collection<? extends Client> clients) {
+		assertIsNonNullArgument(clients);
+
+		List<Client> persistentClients = new ArrayList<Client>();
+		for (Client client : clients) {
+			removeHttpSessionIdToClientMapping(client.getHttpSessionId());
+			doForgetClient(client);
+
+			if (client.isEphemeral()) {
+				client.resetWriteCount();
+			} else {
+				persistentClients.add(client);
+			}
+		}
+
+		deleteObjects(persistentClients);
+	}
+
 	/**
 	 * @methodtype set
 	 */
 	private void removeHttpSessionIdToClientMapping(String httpSessionId) {
-		Client client = httpSessionIdToClientMap.get(httpSessionId);
-		client.removeHttpSessionId();
+		if (httpSessionId == null) {
+			return;
+		}
 
-		httpSessionIdToClientMap.remove(httpSessionId);
+		Client client = httpSessionIdToClientMap.remove(httpSessionId);
+		if (client != null) {
+			client.removeHttpSessionId();
+		}
 	}
 
 	/**
@@ -224,8 +377,29 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodproperty primtive
 	 */
 	protected void doDeleteClient(Client client) {
-		idClientMap.remove(client.getId());
-		deleteObject(client);
+		doForgetClient(client);
+
+		if (client.isEphemeral()) {
+			// was never written, so there is nothing to delete
+			client.resetWriteCount();
+		} else {
+			deleteObject(client);
+		}
+	}
+
+	/**
+	 * Removes the client from all in-memory maps and releases its nickname.
+	 *
+	 * @methodtype set
+	 * @methodproperty primitive
+	 */
+	protected void doForgetClient(Client client) {
+		if (idClientMap.remove(client.getId(), client)) {
+			removeFromIndexes(client);
+			if (client.getNickName() != null) {
+				usedNicknames.remove(client.getNickName());
+			}
+		}
 	}
 
 	/**
@@ -243,9 +417,10 @@ public abstract class ClientManager extends ObjectManager {
 	 * @methodtype set
 	 */
 	public void changeNickname(String oldNickName, String newNickName) throws IllegalArgumentException {
-		assertNicknameIsNotUsed(newNickName);
+		reserveNickname(newNickName);
 
-		listOfUsedNicknames.remove(oldNickName);
-		listOfUsedNicknames.add(newNickName);
+		if (oldNickName != null) {
+			usedNicknames.remove(oldNickName);
+		}
 	}
 }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.Arrays;
+
+/**
+ * Stores many coordinates as primitive columns, so that the distances from a query point to all of them can be
+ * computed in one loop without allocations. The results match AbstractCoordinate.getCartesianDistance and
+ * AbstractCoordinate.getCentralAngle.
+ *
+ * Both the Cartesian values and the terms of the central angle formula are precomputed when a coordinate is added.
+ * The cosine of the longitude difference is expanded to cos a cos b + sin a sin b, so that the loop over the columns
+ * only calls Math.acos and can otherwise be vectorized. Not thread-safe.
+ */
+public class CoordinateColumns {
+    // Cartesian values
+    private double[] xs;
+    private double[] ys;
+    private double[] zs;
+
+    // sine and cosine of the latitude (90 - θ) and the longitude (ϕ), as used by getCentralAngle
+    private double[] sinLatitudes;
+    private double[] cosLatitudes;
+    private double[] sinLongitudes;
+    private double[] cosLongitudes;
+
+    private int size = 0;
+
+    /**
+     * @methodtype constructor
+     */
+    public CoordinateColumns() {
+        this(16);
+    }
+
+    /**
+     * @methodtype constructor
+     * @param capacity number of coordinates that can be added before the columns grow
+     */
+    public CoordinateColumns(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+
+        xs = new double[capacity];
+        ys = new double[capacity];
+        zs = new double[capacity];
+        sinLatitudes = new double[capacity];
+        cosLatitudes = new double[capacity];
+        sinLongitudes = new double[capacity];
+        cosLongitudes = new double[capacity];
+    }
+
+    /**
+     * Adds the coordinate and returns its index.
+     * Coordinates without a spheric representation, e.g. the Cartesian origin, get NaN central angles.
+     *
+     * @methodtype command
+     */
+    public int add(Coordinate coordinate) {
+        if (coordinate == null)
+            throw new NullPointerException("Object must not be null");
+
+        ensureCapacity(size + 1);
+
+        CartesianCoordinate cartesian = coordinate.asCartesianCoordinate();
+        xs[size] = cartesian.getX();
+        ys[size] = cartesian.getY();
+        zs[size] = cartesian.getZ();
+
+        SphericCoordinate spheric = asSphericCoordinateOrNull(coordinate);
+        if (spheric != null) {
+            double latitude = 90 - spheric.getTheta();
+            double longitude = spheric.getPhi();
+            sinLatitudes[size] = Math.sin(latitude);
+            cosLatitudes[size] = Math.cos(latitude);
+            sinLongitudes[size] = Math.sin(longitude);
+            cosLongitudes[size] = Math.cos(longitude);
+        } else {
+            sinLatitudes[size] = Double.NaN;
+            cosLatitudes[size] = Double.NaN;
+            sinLongitudes[size] = Double.NaN;
+            cosLongitudes[size] = Double.NaN;
+        }
+
+        return size++;
+    }
+
+    /**
+     * @methodtype get
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @methodtype command
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Writes the Cartesian distance from the query to the coordinate at index i into result[i], for all coordinates.
+     *
+     * @methodtype helper
+     * @param result array with at least size() elements
+     */
+    public void getCartesianDistances(Coordinate query, double[] result) {
+        assertIsValidResult(result);
+
+        CartesianCoordinate cartesianQuery = query.asCartesianCoordinate();
+        double x = cartesianQuery.getX();
+        double y = cartesianQuery.getY();
+        double z = cartesianQuery.getZ();
+
+        double[] xs = this.xs;
+        double[] ys = this.ys;
+        double[] zs = this.zs;
+        for (int i = 0; i < size; i++) {
+            double xDiff = xs[i] - x;
+            double yDiff = ys[i] - y;
+            double zDiff = zs[i] - z;
+            result[i] = Math.sqrt(xDiff * xDiff + yDiff * yDiff + zDiff * zDiff);
+        }
+    }
+
+    /**
+     * Writes the central angle between the query and the coordinate at index i into result[i], for all coordinates.
+     *
+     * @methodtype helper
+     * @param result array with at least size() elements
+     */
+    public void getCentralAngles(Coordinate query, double[] result) {
+        assertIsValidResult(result);
+
+        SphericCoordinate sphericQuery = query.asSphericCoordinate();
+        double latitude = 90 - sphericQuery.getTheta();
+        double sinLatitude = Math.sin(latitude);
+        double cosLatitude = Math.cos(latitude);
+        double longitude = sphericQuery.getPhi();
+        double sinLongitude = Math.sin(longitude);
+        double cosLongitude = Math.cos(longitude);
+
+        double[] sinLatitudes = this.sinLatitudes;
+        double[] cosLatitudes = this.cosLatitudes;
+        double[] sinLongitudes = this.sinLongitudes;
+        double[] cosLongitudes = this.cosLongitudes;
+        for (int i = 0; i < size; i++) {
+            // cos(Δϕ) = cos ϕ1 cos ϕ2 + sin ϕ1 sin ϕ2; the cosine is even, so Δϕ needs no Math.abs
+            double cosDeltaLongitude = cosLongitude * cosLongitudes[i] + sinLongitude * sinLongitudes[i];
+            result[i] = Math.acos(
+                    sinLatitude * sinLatitudes[i] + cosLatitude * cosLatitudes[i] * cosDeltaLongitude
+            );
+        }
+    }
+
+    /**
+     * @methodtype assertation
+     */
+    private void assertIsValidResult(double[] result) {
+        if (result == null)
+            throw new NullPointerException("Object must not be null");
+
+        if (result.length < size)
+            throw new IllegalArgumentException("result must have at least " + size + " elements");
+    }
+
+    /**
+     * @methodtype conversion
+     */
+    private static SphericCoordinate asSphericCoordinateOrNull(Coordinate coordinate) {
+        try {
+            return coordinate.asSphericCoordinate();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @methodtype command
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= xs.length)
+            return;
+
+        int newCapacity = Math.max(capacity, xs.length * 2);
+        xs = Arrays.copyOf(xs, newCapacity);
+        ys = Arrays.copyOf(ys, newCapacity);
+        zs = Arrays.copyOf(zs, newCapacity);
+        sinLatitudes = Arrays.copyOf(sinLatitudes, newCapacity);
+        cosLatitudes = Arrays.copyOf(cosLatitudes, newCapacity);
+        sinLongitudes = Arrays.copyOf(sinLongitudes, newCapacity);
+        cosLongitudes = Arrays.copyOf(cosLongitudes, newCapacity);
+    }
+}
@@ -1,45 +1,29 @@
 package org.wahlzeit.model;
 
-import java.util.*;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Package-local service class implementing the value object semantics for Coordinate classes. Thread-safe.
  */
 class CoordinateService {
     // instances caches
-    private static final ArrayList<Coordinate> cartesianCoordinateCache = new ArrayList<>();
-    private static final ArrayList<Coordinate> sphericCoordinateCache = new ArrayList<>();
-
-    private static Coordinate lookUpCache(final ArrayList<Coordinate> cache, Coordinate temp) {
-        // efficient lookups aren't part of the requirements
-        for (Coordinate existingCoord : cache) {
-            // compare values only, hash would be pointless as temp is definitely a new object with a different hash
-            if (existingCoord.isEqual(temp))
-                return existingCoord;
-        }
-
-        return null;
-    }
+    private static final CoordinateCache<CartesianCoordinate> cartesianCoordinateCache = new CoordinateCache<>();
+    private static final CoordinateCache<SphericCoordinate> sphericCoordinateCache = new CoordinateCache<>();
 
     /**
      * @methodtype factory
      */
-    public static CartesianCoordinate getCartesianCoordinate(final int x, final int y, final int z) {
+    public static CartesianCoordinate getCartesianCoordinate(final double x, final double y, final double z) {
         // create a new, temporary instance that can be used to look up the cache
         CartesianCoordinate temp = new CartesianCoordinate(x, y, z);
 
-        // ensure thread-safety of this helper
-        synchronized (cartesianCoordinateCache) {
-            CartesianCoordinate existing = (CartesianCoordinate) lookUpCache(cartesianCoordinateCache, temp);
-
-            // if we find an existing object, we must return it
-            if (existing != null)
-                return existing;
-
-            // otherwise, we just add our new object to the cache, and return that one instead
-            cartesianCoordinateCache.add(temp);
-            return temp;
-        }
+        // returns an existing, equal object if there is one, and the new object otherwise
+        return cartesianCoordinateCache.intern(temp);
     }
 
     /**
@@ -49,17 +33,142 @@ class CoordinateService {
         // create a new, temporary instance that can be used to look up the cache
         SphericCoordinate temp = new SphericCoordinate(phi, theta, radius);
 
-        // ensure thread-safety of this helper
-        synchronized (sphericCoordinateCache) {
-            SphericCoordinate existing = (SphericCoordinate) lookUpCache(sphericCoordinateCache, temp);
+        // returns an existing, equal object if there is one, and the new object otherwise
+        SphericCoordinate result = sphericCoordinateCache.intern(temp);
+
+        // interning computed the Cartesian representation; converting it back yields the cached instance
+        result.asCartesianCoordinate().setSphericCoordinate(result);
 
-            // if we find an existing object, we must return it
+        return result;
+    }
+
+    /**
+     * Flyweight cache that finds an existing coordinate equal to a given one in constant time.
+     *
+     * Coordinates are put into the cell of a grid over their Cartesian values. The cells are as wide as the equality
+     * threshold, so each component of an equal coordinate lies in the same or an adjacent cell, and a lookup has to
+     * check the 27 cells around the coordinate only. Lookups take no lock; adding a coordinate is synchronized, so two
+     * equal coordinates cannot be added concurrently. Cached coordinates are referenced weakly and their entries are
+     * removed once they have been reclaimed.
+     */
+    private static class CoordinateCache<C extends Coordinate> {
+        private static final double CELL_SIZE = AbstractCoordinate.EQUALITY_THRESHOLD;
+
+        // the lists are never changed once they are in the map, they are replaced instead
+        private final ConcurrentMap<GridCell, List<Entry<C>>> cells = new ConcurrentHashMap<>();
+        private final ReferenceQueue<C> reclaimedCoordinates = new ReferenceQueue<>();
+
+        /**
+         * @methodtype factory
+         */
+        C intern(C coordinate) {
+            CartesianCoordinate cartesian = coordinate.asCartesianCoordinate();
+            double x = cartesian.getX();
+            double y = cartesian.getY();
+            double z = cartesian.getZ();
+
+            C existing = lookUp(x, y, z);
             if (existing != null)
                 return existing;
 
-            // otherwise, we just add our new object to the cache, and return that one instead
-            sphericCoordinateCache.add(temp);
-            return temp;
+            synchronized (this) {
+                removeReclaimedEntries();
+
+                // another thread may have added an equal coordinate in the meantime
+                existing = lookUp(x, y, z);
+                if (existing != null)
+                    return existing;
+
+                GridCell cell = new GridCell(GridCell.getIndex(x, CELL_SIZE), GridCell.getIndex(y, CELL_SIZE),
+                        GridCell.getIndex(z, CELL_SIZE));
+                List<Entry<C>> entries = cells.get(cell);
+                List<Entry<C>> newEntries = (entries != null) ? new ArrayList<>(entries) : new ArrayList<>(1);
+                newEntries.add(new Entry<>(coordinate, x, y, z, cell, reclaimedCoordinates));
+                cells.put(cell, newEntries);
+
+                return coordinate;
+            }
+        }
+
+        /**
+         * @methodtype get
+         */
+        private C lookUp(double x, double y, double z) {
+            long cellX = GridCell.getIndex(x, CELL_SIZE);
+            long cellY = GridCell.getIndex(y, CELL_SIZE);
+            long cellZ = GridCell.getIndex(z, CELL_SIZE);
+
+            for (long dx = -1; dx <= 1; dx++) {
+                for (long dy = -1; dy <= 1; dy++) {
+                    for (long dz = -1; dz <= 1; dz++) {
+                        List<Entry<C>> entries = cells.get(new GridCell(cellX + dx, cellY + dy, cellZ + dz));
+                        if (entries == null)
+                            continue;
+
+                        for (Entry<C> entry : entries) {
+                            C existing = entry.get();
+                            if (existing != null && entry.isEqual(x, y, z))
+                                return existing;
+                        }
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Must be called while holding the lock of the cache.
+         *
+         * @methodtype command
+         */
+        @SuppressWarnings("unchecked")
+        private void removeReclaimedEntries() {
+            for (Object reference = reclaimedCoordinates.poll(); reference != null;
+                 reference = reclaimedCoordinates.poll()) {
+                Entry<C> entry = (Entry<C>) reference;
+                List<Entry<C>> entries = cells.get(entry.cell);
+                if (entries == null)
+                    continue;
+
+                List<Entry<C>> newEntries = new ArrayList<>(entries);
+                newEntries.remove(entry);
+                if (newEntries.isEmpty()) {
+                    cells.remove(entry.cell);
+                } else {
+                    cells.put(entry.cell, newEntries);
+                }
+            }
+        }
+    }
+
+    /**
+     * Weak reference to a cached coordinate that keeps its Cartesian values, so lookups need no conversions.
+     */
+    private static final class Entry<C> extends WeakReference<C> {
+        private final double x;
+        private final double y;
+        private final double z;
+        private final GridCell cell;
+
+        Entry(C coordinate, double x, double y, double z, GridCell cell, ReferenceQueue<C> queue) {
+            super(coordinate, queue);
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.cell = cell;
+        }
+
+        /**
+         * @methodtype boolean-query
+         * Same comparison as AbstractCoordinate.isEqual
+         */
+        boolean isEqual(double otherX, double otherY, double otherZ) {
+            double xDiff = Math.abs(otherX - x);
+            double yDiff = Math.abs(otherY - y);
+            double zDiff = Math.abs(otherZ - z);
+
+            return (xDiff + yDiff + zDiff) < AbstractCoordinate.EQUALITY_THRESHOLD;
         }
     }
 }
@@ -65,6 +65,25 @@ public class Globals extends DataObject {
 		incWriteCount();
 	}
 
+	/**
+	 * Takes the larger value of each id, so that ids saved by other instances never go back.
+	 */
+	public void mergeMax(Globals other) {
+		setLastUserId(Math.max(asLong(lastUserId), asLong(other.lastUserId)));
+		setLastPhotoId(Math.max(lastPhotoId, other.lastPhotoId));
+		setLastCaseId(Math.max(lastCaseId, other.lastCaseId));
+		setLastSessionId(Math.max(lastSessionId, other.lastSessionId));
+	}
+
+	public boolean hasSameIds(Globals other) {
+		return asLong(lastUserId) == asLong(other.lastUserId) && lastPhotoId == other.lastPhotoId
+				&& lastCaseId == other.lastCaseId && lastSessionId == other.lastSessionId;
+	}
+
+	private static long asLong(Long value) {
+		return (value == null) ? 0 : value;
+	}
+
 	public String asString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("Globals with ID ").append(id);
@@ -2,9 +2,11 @@ package org.wahlzeit.model;
 
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
+import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.ObjectManager;
 import org.wahlzeit.servlets.AbstractServlet;
 
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import static org.wahlzeit.services.OfyService.ofy;
@@ -17,7 +19,7 @@ import static org.wahlzeit.services.OfyService.ofy;
  * 
  * @review
  */
-public class GlobalsManager extends ObjectManager {
+public class GlobalsManager extends ObjectManager implements PhotoIdLeaser {
 
 	private static final Logger log = Logger.getLogger(GlobalsManager.class.getName());
 	/**
@@ -25,6 +27,23 @@ public class GlobalsManager extends ObjectManager {
 	 */
 	private static GlobalsManager instance = new GlobalsManager();
 
+	/**
+	 * Minimum time between two saves of changed globals, can be overridden by this system property
+	 */
+	public static final String SAVE_INTERVAL_PROPERTY = "wahlzeit.globals.saveIntervalMillis";
+	public static final long DEFAULT_SAVE_INTERVAL = 10000;
+
+	/**
+	 *
+	 */
+	protected final long saveInterval = Long.getLong(SAVE_INTERVAL_PROPERTY, DEFAULT_SAVE_INTERVAL);
+	protected final AtomicLong lastSaveTime = new AtomicLong(System.currentTimeMillis());
+
+	/**
+	 * The globals as last loaded or saved
+	 */
+	protected volatile Globals savedGlobals = null;
+
 	/**
 	 * @methodtype command Loads all global variables and stores them in their corresponding classes.
 	 */
@@ -37,8 +56,10 @@ public class GlobalsManager extends ObjectManager {
 			}
 		});
 		log.info(globals.asString());
+		savedGlobals = globals;
 
 		UserManager.getInstance().setLastClientId(globals.getLastUserId());
+		PhotoId.setLeaser(this);
 		PhotoId.setCurrentIdFromInt(globals.getLastPhotoId());
 		Case.setLastCaseId(new CaseId(globals.getLastCaseId()));
 		AbstractServlet.setLastSessionId(globals.getLastSessionId());
@@ -91,22 +112,115 @@ public class GlobalsManager extends ObjectManager {
 	}
 
 	/**
-	 * @methodtype command Saves all global variables.
+	 * @methodtype get
+	 */
+	protected Globals getCurrentGlobals() {
+		Globals result = new Globals();
+		result.setLastUserId(UserManager.getInstance().getLastClientId());
+		result.setLastPhotoId(PhotoId.getCurrentIdAsInt());
+		result.setLastCaseId(Case.getLastCaseId().asInt());
+		result.setLastSessionId(AbstractServlet.getLastSessionId());
+		return result;
+	}
+
+	/**
+	 * @methodtype command Saves the global variables if they changed and the last save is longer than the save
+	 * interval ago. Called at the end of requests, so that many changes in a row lead to one write only. Changes
+	 * made within the interval before a quiet period are written by the SaveGlobalsAgent cron job or by saveAll.
+	 */
+	public void saveGlobalsIfDue() {
+		long now = System.currentTimeMillis();
+		long lastSave = lastSaveTime.get();
+		if (now - lastSave < saveInterval) {
+			return;
+		}
+
+		if (hasChangedGlobals() && lastSaveTime.compareAndSet(lastSave, now)) {
+			saveGlobals();
+		}
+	}
+
+	/**
+	 * @methodtype command Saves the global variables if they changed, regardless of the save interval.
+	 */
+	public void saveGlobalsIfChanged() {
+		if (hasChangedGlobals()) {
+			saveGlobals();
+		}
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	protected boolean hasChangedGlobals() {
+		Globals saved = savedGlobals;
+		return saved == null || !saved.hasSameIds(getCurrentGlobals());
+	}
+
+	/**
+	 * @methodtype command Saves all global variables. Each id is merged with the stored one, so that it never
+	 * decreases, even if other instances saved larger ids in the meantime. The merged ids are then set in the
+	 * local counters, so that this instance does not hand out ids other instances already used.
 	 */
 	public synchronized void saveGlobals() {
-		final Globals globals = new Globals();
-		globals.setLastUserId(UserManager.getInstance().getLastClientId());
-		globals.setLastPhotoId(PhotoId.getCurrentIdAsInt());
-		globals.setLastCaseId(Case.getLastCaseId().asInt());
-		globals.setLastSessionId(AbstractServlet.getLastSessionId());
-		log.info(globals.asString());
+		lastSaveTime.set(System.currentTimeMillis());
+		final Globals globals = getCurrentGlobals();
 
 		ObjectifyService.run(new Work<Void>() {
 			@Override
 			public Void run() {
-				writeObject(globals);
-				return null;
+				return ofy().transact(new Work<Void>() {
+					@Override
+					public Void run() {
+						Globals stored = readObject(Globals.class, Globals.DEAULT_ID);
+						if (stored != null) {
+							globals.mergeMax(stored);
+						}
+						writeObjectNow(globals);
+						return null;
+					}
+				});
+			}
+		});
+
+		raiseCurrentIds(globals);
+		log.info(globals.asString());
+		savedGlobals = globals;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void raiseCurrentIds(Globals globals) {
+		UserManager.getInstance().raiseLastClientId(globals.getLastUserId());
+		Case.raiseLastCaseId(globals.getLastCaseId());
+		AbstractServlet.raiseLastSessionId(globals.getLastSessionId());
+	}
+
+	/**
+	 * @methodtype command Reserves a block of photo ids in the Globals, so that no other instance uses them.
+	 */
+	@Override
+	public int leasePhotoIds(final int blockSize) {
+		int result = ObjectifyService.run(new Work<Integer>() {
+			@Override
+			public Integer run() {
+				return ofy().transact(new Work<Integer>() {
+					@Override
+					public Integer run() {
+						Globals globals = readObject(Globals.class, Globals.DEAULT_ID);
+						int start = Math.max(globals.getLastPhotoId(), PhotoId.getCurrentIdAsInt()) + 1;
+						globals.setLastPhotoId(start + blockSize - 1);
+						writeObjectNow(globals);
+						return start;
+					}
+				});
 			}
 		});
+
+		log.config(LogBuilder.createSystemMessage().addAction("lease photo ids").
+				addParameter("first id", result).
+				addParameter("block size", blockSize).toString());
+		return result;
 	}
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+/**
+ * Index of a cell in a regular grid over Cartesian space, used to find nearby coordinates by hashing.
+ */
+final class GridCell {
+
+	/**
+	 *
+	 */
+	final long x;
+	final long y;
+	final long z;
+
+	/**
+	 * @methodtype constructor
+	 */
+	GridCell(long x, long y, long z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Returns the index of the cell that contains the value along one axis.
+	 *
+	 * @methodtype conversion
+	 */
+	static long getIndex(double value, double cellSize) {
+		return (long) Math.floor(value / cellSize);
+	}
+
+	/**
+	 * Returns the largest difference of the indices along any axis.
+	 *
+	 * @methodtype get
+	 */
+	long getDistance(long otherX, long otherY, long otherZ) {
+		return Math.max(Math.abs(x - otherX), Math.max(Math.abs(y - otherY), Math.abs(z - otherZ)));
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof GridCell)) {
+			return false;
+		}
+
+		GridCell cell = (GridCell) other;
+		return x == cell.x && y == cell.y && z == cell.z;
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL + z * 0x165667B19E3779F9L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+}
@@ -23,6 +23,8 @@ package org.wahlzeit.model;
 import com.googlecode.objectify.annotation.Subclass;
 import org.wahlzeit.services.EmailAddress;
 
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * A Guest is a client that is not logged in.
  */
@@ -35,10 +37,17 @@ public class Guest extends Client {
 	public static final String GUEST_PREFIX = "guest#";
 
 	/**
-	 *
+	 * Ephemeral guests are named with a random number after this prefix, so they never take a client id
+	 */
+	public static final String EPHEMERAL_GUEST_PREFIX = GUEST_PREFIX + "e";
+
+	/**
+	 * A new guest is ephemeral until it does something worth persisting, e.g. praising a photo. Only then it gets a
+	 * client id, see ClientManager.persistClient, so visits that are never persisted do not change the globals.
 	 */
 	public Guest() {
-		String userId = GUEST_PREFIX + UserManager.getInstance().getNextClientId();
+		setEphemeral(true);
+		String userId = createEphemeralId();
 		initialize(userId, userId, EmailAddress.EMPTY, AccessRights.GUEST, null);
 	}
 
@@ -47,7 +56,26 @@ public class Guest extends Client {
 	 * previousClient is used so set these basic settings in the new <@link>Guest</@link>.
 	 */
 	public Guest(Client previousClient) {
-		String userId = GUEST_PREFIX + UserManager.getInstance().getNextClientId();
+		setEphemeral(true);
+		String userId = createEphemeralId();
 		initialize(userId, userId, EmailAddress.EMPTY, AccessRights.GUEST, previousClient);
 	}
+
+	/**
+	 * @methodtype factory
+	 */
+	protected static String createEphemeralId() {
+		return EPHEMERAL_GUEST_PREFIX + Long.toHexString(ThreadLocalRandom.current().nextLong());
+	}
+
+	/**
+	 * A persisted guest is named after its client id, as before.
+	 *
+	 * @methodtype set
+	 */
+	@Override
+	protected void setPersistentId(Long clientId) {
+		id = GUEST_PREFIX + clientId;
+		nickName = id;
+	}
 }
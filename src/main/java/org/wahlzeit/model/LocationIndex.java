@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory spatial index over the locations of photos, for radius and k-nearest queries by Cartesian distance.
+ *
+ * Photos are hashed into the cells of a regular grid over the Cartesian form of their coordinates, so a query only
+ * looks at the cells around the query point. If that would mean more cells than are occupied, e.g. for a very large
+ * radius, the occupied cells are scanned instead.
+ */
+public class LocationIndex {
+
+	/**
+	 * Edge length of a grid cell, in the unit of the Cartesian coordinates, see appengine-web.xml
+	 */
+	public static final String CELL_SIZE_PROPERTY = "wahlzeit.locationIndex.cellSize";
+
+	/**
+	 *
+	 */
+	public static final double DEFAULT_CELL_SIZE = 1.0;
+
+	/**
+	 *
+	 */
+	protected final double cellSize;
+
+	/**
+	 *
+	 */
+	protected final Map<GridCell, List<Entry>> entriesByCell = new HashMap<GridCell, List<Entry>>();
+	protected final Map<PhotoId, Entry> entriesByPhotoId = new HashMap<PhotoId, Entry>();
+
+	/**
+	 * Bounds of all occupied cells; they shrink when a cell on the bounds becomes empty
+	 */
+	protected long minCellX = Long.MAX_VALUE;
+	protected long minCellY = Long.MAX_VALUE;
+	protected long minCellZ = Long.MAX_VALUE;
+	protected long maxCellX = Long.MIN_VALUE;
+	protected long maxCellY = Long.MIN_VALUE;
+	protected long maxCellZ = Long.MIN_VALUE;
+
+	/**
+	 *
+	 */
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * @methodtype constructor
+	 */
+	public LocationIndex() {
+		this(Double.parseDouble(System.getProperty(CELL_SIZE_PROPERTY, String.valueOf(DEFAULT_CELL_SIZE))));
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public LocationIndex(double cellSize) {
+		if (!(cellSize > 0)) {
+			throw new IllegalArgumentException("cell size should be positive");
+		}
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Sets the location of the photo; a null location removes the photo from the index.
+	 *
+	 * @methodtype command
+	 */
+	public void setLocation(PhotoId photoId, Location location) {
+		if (location == null || location.getCoordinate() == null) {
+			removePhoto(photoId);
+			return;
+		}
+
+		CartesianCoordinate coordinate = location.getCoordinate().asCartesianCoordinate();
+		Entry entry = new Entry(photoId, coordinate.getX(), coordinate.getY(), coordinate.getZ(), cellSize);
+
+		lock.writeLock().lock();
+		try {
+			doRemove(photoId);
+			doAdd(entry);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void removePhoto(PhotoId photoId) {
+		lock.writeLock().lock();
+		try {
+			doRemove(photoId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			entriesByCell.clear();
+			entriesByPhotoId.clear();
+			resetBounds();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasPhoto(PhotoId photoId) {
+		lock.readLock().lock();
+		try {
+			return entriesByPhotoId.containsKey(photoId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPhotos() {
+		lock.readLock().lock();
+		try {
+			return entriesByPhotoId.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the ids of all photos whose Cartesian distance to the center is at most the radius.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoIdSet getPhotoIdsWithin(Coordinate center, double radius) {
+		CartesianCoordinate cartesianCenter = center.asCartesianCoordinate();
+		double x = cartesianCenter.getX();
+		double y = cartesianCenter.getY();
+		double z = cartesianCenter.getZ();
+		double maxDistanceSquared = radius * radius;
+
+		PhotoIdSet result = new PhotoIdSet();
+		if (radius < 0) {
+			return result;
+		}
+
+		long minX = GridCell.getIndex(x - radius, cellSize);
+		long minY = GridCell.getIndex(y - radius, cellSize);
+		long minZ = GridCell.getIndex(z - radius, cellSize);
+		long maxX = GridCell.getIndex(x + radius, cellSize);
+		long maxY = GridCell.getIndex(y + radius, cellSize);
+		long maxZ = GridCell.getIndex(z + radius, cellSize);
+		double noCells = (maxX - minX + 1.0) * (maxY - minY + 1.0) * (maxZ - minZ + 1.0);
+
+		lock.readLock().lock();
+		try {
+			if (noCells > entriesByCell.size()) {
+				for (Map.Entry<GridCell, List<Entry>> cellEntries : entriesByCell.entrySet()) {
+					GridCell cell = cellEntries.getKey();
+					if (cell.x >= minX && cell.x <= maxX && cell.y >= minY && cell.y <= maxY
+							&& cell.z >= minZ && cell.z <= maxZ) {
+						addEntriesWithin(result, cellEntries.getValue(), x, y, z, maxDistanceSquared);
+					}
+				}
+			} else {
+				for (long cellX = minX; cellX <= maxX; cellX++) {
+					for (long cellY = minY; cellY <= maxY; cellY++) {
+						for (long cellZ = minZ; cellZ <= maxZ; cellZ++) {
+							List<Entry> entries = entriesByCell.get(new GridCell(cellX, cellY, cellZ));
+							if (entries != null) {
+								addEntriesWithin(result, entries, x, y, z, maxDistanceSquared);
+							}
+						}
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the ids of the k photos closest to the center, the closest first.
+	 *
+	 * @methodtype get
+	 */
+	public List<PhotoId> getNearestPhotoIds(Coordinate center, int k) {
+		if (k <= 0) {
+			return new ArrayList<PhotoId>();
+		}
+
+		CartesianCoordinate cartesianCenter = center.asCartesianCoordinate();
+		double x = cartesianCenter.getX();
+		double y = cartesianCenter.getY();
+		double z = cartesianCenter.getZ();
+		long centerX = GridCell.getIndex(x, cellSize);
+		long centerY = GridCell.getIndex(y, cellSize);
+		long centerZ = GridCell.getIndex(z, cellSize);
+
+		// farthest of the k closest candidates found so far on top
+		PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>(k + 1, Candidate.FARTHEST_FIRST);
+
+		lock.readLock().lock();
+		try {
+			long maxRing = getMaxDistance(centerX, centerY, centerZ);
+			for (long ring = 0; ring <= maxRing; ring++) {
+				double ringWidth = 2.0 * ring + 1;
+				if (ringWidth * ringWidth * ringWidth > entriesByCell.size()) {
+					// scanning the remaining occupied cells is cheaper than visiting all cells of the next rings
+					for (Map.Entry<GridCell, List<Entry>> cellEntries : entriesByCell.entrySet()) {
+						if (cellEntries.getKey().getDistance(centerX, centerY, centerZ) >= ring) {
+							addNearestEntries(candidates, k, cellEntries.getValue(), x, y, z);
+						}
+					}
+					break;
+				}
+
+				visitRing(candidates, k, centerX, centerY, centerZ, ring, x, y, z);
+
+				// all photos in cells further out are at least ring * cellSize away
+				double minDistance = ring * cellSize;
+				if (candidates.size() == k && candidates.peek().distanceSquared <= minDistance * minDistance) {
+					break;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		PhotoId[] result = new PhotoId[candidates.size()];
+		for (int i = result.length - 1; i >= 0; i--) {
+			result[i] = candidates.poll().photoId;
+		}
+
+		List<PhotoId> resultList = new ArrayList<PhotoId>(result.length);
+		Collections.addAll(resultList, result);
+		return resultList;
+	}
+
+	/**
+	 * Visits the cells whose index differs by exactly ring along at least one axis.
+	 *
+	 * @methodtype command
+	 */
+	protected void visitRing(PriorityQueue<Candidate> candidates, int k, long centerX, long centerY, long centerZ,
+							 long ring, double x, double y, double z) {
+		for (long dx = -ring; dx <= ring; dx++) {
+			for (long dy = -ring; dy <= ring; dy++) {
+				boolean isOnRing = Math.abs(dx) == ring || Math.abs(dy) == ring;
+				long stepZ = (isOnRing || ring == 0) ? 1 : 2 * ring;
+				for (long dz = -ring; dz <= ring; dz += stepZ) {
+					List<Entry> entries = entriesByCell.get(new GridCell(centerX + dx, centerY + dy, centerZ + dz));
+					if (entries != null) {
+						addNearestEntries(candidates, k, entries, x, y, z);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns an upper bound of the index distance from the given cell to any occupied cell, -1 if there is none.
+	 *
+	 * @methodtype get
+	 */
+	protected long getMaxDistance(long centerX, long centerY, long centerZ) {
+		if (entriesByCell.isEmpty()) {
+			return -1;
+		}
+
+		long result = Math.max(Math.abs(centerX - minCellX), Math.abs(maxCellX - centerX));
+		result = Math.max(result, Math.max(Math.abs(centerY - minCellY), Math.abs(maxCellY - centerY)));
+		return Math.max(result, Math.max(Math.abs(centerZ - minCellZ), Math.abs(maxCellZ - centerZ)));
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void addEntriesWithin(PhotoIdSet result, List<Entry> entries, double x, double y, double z,
+									double maxDistanceSquared) {
+		for (Entry entry : entries) {
+			if (entry.getDistanceSquared(x, y, z) <= maxDistanceSquared) {
+				result.add(entry.photoId);
+			}
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void addNearestEntries(PriorityQueue<Candidate> candidates, int k, List<Entry> entries,
+									 double x, double y, double z) {
+		for (Entry entry : entries) {
+			double distanceSquared = entry.getDistanceSquared(x, y, z);
+			if (candidates.size() < k) {
+				candidates.add(new Candidate(entry.photoId, distanceSquared));
+			} else if (distanceSquared < candidates.peek().distanceSquared) {
+				candidates.poll();
+				candidates.add(new Candidate(entry.photoId, distanceSquared));
+			}
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doAdd(Entry entry) {
+		entriesByPhotoId.put(entry.photoId, entry);
+		List<Entry> entries = entriesByCell.get(entry.cell);
+		if (entries == null) {
+			entries = new ArrayList<Entry>(2);
+			entriesByCell.put(entry.cell, entries);
+		}
+		entries.add(entry);
+
+		extendBounds(entry.cell);
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doRemove(PhotoId photoId) {
+		Entry entry = entriesByPhotoId.remove(photoId);
+		if (entry != null) {
+			List<Entry> entries = entriesByCell.get(entry.cell);
+			entries.remove(entry);
+			if (entries.isEmpty()) {
+				entriesByCell.remove(entry.cell);
+				if (isOnBounds(entry.cell)) {
+					recomputeBounds();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected boolean isOnBounds(GridCell cell) {
+		return cell.x == minCellX || cell.x == maxCellX || cell.y == minCellY || cell.y == maxCellY
+				|| cell.z == minCellZ || cell.z == maxCellZ;
+	}
+
+	/**
+	 * Scans the occupied cells, so it is only called if an emptied cell was on the bounds.
+	 *
+	 * @methodtype command
+	 */
+	protected void recomputeBounds() {
+		resetBounds();
+		for (GridCell cell : entriesByCell.keySet()) {
+			extendBounds(cell);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void resetBounds() {
+		minCellX = minCellY = minCellZ = Long.MAX_VALUE;
+		maxCellX = maxCellY = maxCellZ = Long.MIN_VALUE;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void extendBounds(GridCell cell) {
+		minCellX = Math.min(minCellX, cell.x);
+		minCellY = Math.min(minCellY, cell.y);
+		minCellZ = Math.min(minCellZ, cell.z);
+		maxCellX = Math.max(maxCellX, cell.x);
+		maxCellY = Math.max(maxCellY, cell.y);
+		maxCellZ = Math.max(maxCellZ, cell.z);
+	}
+
+	/**
+	 * Location of a photo
+	 */
+	protected static class Entry {
+
+		protected final PhotoId photoId;
+		protected final double x;
+		protected final double y;
+		protected final double z;
+		protected final GridCell cell;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected Entry(PhotoId photoId, double x, double y, double z, double cellSize) {
+			this.photoId = photoId;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.cell = new GridCell(GridCell.getIndex(x, cellSize), GridCell.getIndex(y, cellSize),
+					GridCell.getIndex(z, cellSize));
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		protected double getDistanceSquared(double otherX, double otherY, double otherZ) {
+			double xDiff = otherX - x;
+			double yDiff = otherY - y;
+			double zDiff = otherZ - z;
+			return xDiff * xDiff + yDiff * yDiff + zDiff * zDiff;
+		}
+	}
+
+	/**
+	 * A photo found by a nearest neighbor query
+	 */
+	protected static class Candidate {
+
+		protected static final Comparator<Candidate> FARTHEST_FIRST = new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate first, Candidate second) {
+				return Double.compare(second.distanceSquared, first.distanceSquared);
+			}
+		};
+
+		protected final PhotoId photoId;
+		protected final double distanceSquared;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected Candidate(PhotoId photoId, double distanceSquared) {
+			this.photoId = photoId;
+			this.distanceSquared = distanceSquared;
+		}
+	}
+
+}
@@ -20,20 +20,15 @@
 
 package org.wahlzeit.model;
 
-import com.google.api.client.util.ArrayMap;
 import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.images.Image;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
-import com.googlecode.objectify.annotation.Ignore;
 import com.googlecode.objectify.annotation.Parent;
 import org.wahlzeit.services.DataObject;
 import org.wahlzeit.services.EmailAddress;
 import org.wahlzeit.services.Language;
 import org.wahlzeit.services.ObjectManager;
 
-import java.util.Map;
-
 /**
  * A photo represents a user-provided (uploaded) photo.
  */
@@ -67,6 +62,11 @@ public class Photo extends DataObject {
 	public static final int MAX_THUMB_PHOTO_WIDTH = 105;
 	public static final int MAX_THUMB_PHOTO_HEIGHT = 150;
 
+	/**
+	 * Rough memory footprint of a photo without its variable-length fields, used to weigh photos in the PhotoCache
+	 */
+	public static final int ESTIMATED_BASE_SIZE = 512;
+
 	protected PhotoId id = null;
 	
 	/**
@@ -74,13 +74,6 @@ public class Photo extends DataObject {
 	 */
 	protected String ownerId;
 	
-	/**
-	 * Each photo can be viewed in different sizes (XS, S, M, L, XL)
-	 * Images are pre-computed in these sizes to optimize bandwidth when requested.
-	 */
-	@Ignore
-	transient protected Map<PhotoSize, Image> images = new ArrayMap<PhotoSize, Image>();
-	
 	/**
 	 *
 	 */
@@ -106,11 +99,11 @@ public class Photo extends DataObject {
 	protected PhotoStatus status = PhotoStatus.VISIBLE;
 	
 	/**
-	 *
+	 * Initial praise; votes are counted by the PraiseCounterManager
 	 */
 	protected int praiseSum = 10;
 	protected int noVotes = 1;
-	protected int noVotesAtLastNotification = 1;
+	protected long noVotesAtLastNotification = 1;
 	
 	/**
 	 *
@@ -128,9 +121,9 @@ public class Photo extends DataObject {
 	protected Location location = null;
 	
 	/**
-	 *
+	 * Mirrors the PhotoId, so a single photo can be loaded by key, see PhotoFactory.loadPhoto(). Photos saved before
+	 * were stored under an auto-allocated key; they are re-keyed when loaded, see PhotoManager.migrateLegacyKeys().
 	 */
-	//TODO: change it to a single long
 	@Id
 	Long idLong;
 	@Parent
@@ -152,6 +145,14 @@ public class Photo extends DataObject {
 			throw new IllegalArgumentException("praise sum must be 0 < sum <= 10");
 	}
 
+	/**
+	 * @methodtype assertation
+	 */
+	protected void assertIsValidPraiseValue(int value) {
+		if (value <= 0 || value > 10)
+			throw new IllegalArgumentException("praise value must be 0 < value <= 10");
+	}
+
 	/**
 	 * @methodtype assertation
 	 */
@@ -177,11 +178,13 @@ public class Photo extends DataObject {
 	}
 
 	/**
+	 * Used by Objectify to load photos, whose fields are set afterwards; does not take a new id. New photos are
+	 * created with an id, see PhotoFactory.createPhoto().
 	 *
+	 * @methodtype constructor
 	 */
-	public Photo() {
-		id = PhotoId.getNextId();
-		incWriteCount();
+	protected Photo() {
+		// do nothing
 	}
 
 	/**
@@ -192,6 +195,7 @@ public class Photo extends DataObject {
 		assertNotNull(myId);
 
 		id = myId;
+		idLong = (long) myId.asInt();
 
 		incWriteCount();
 
@@ -199,30 +203,34 @@ public class Photo extends DataObject {
 	}
 
 	/**
-	 * @methodtype get
+	 * Returns true if the photo is stored under a key that does not mirror its PhotoId.
+	 *
+	 * @methodtype boolean-query
 	 */
-	public Image getImage(PhotoSize photoSize) {
-		assertClassInvariants();
-
-		// preconditions
-		assertNotNull(photoSize);
+	boolean hasLegacyKey() {
+		return idLong != null && idLong.longValue() != id.asInt();
+	}
 
-		return images.get(photoSize);
+	/**
+	 * Makes the key mirror the PhotoId; the photo has to be saved under its new key.
+	 *
+	 * @methodtype command
+	 */
+	void updateKey() {
+		idLong = (long) id.asInt();
+		incWriteCount();
 	}
 
 	/**
-	 * @methodtype set
+	 * Returns the approximate number of bytes this photo occupies in memory. Image data is not held by photos, it is
+	 * cached by the ImageStorage.
+	 *
+	 * @methodtype get
 	 */
-	public void setImage(PhotoSize photoSize, Image image) {
+	public long getEstimatedSize() {
 		assertClassInvariants();
 
-		// preconditions
-		assertNotNull(photoSize);
-		assertNotNull(image);
-
-		this.images.put(photoSize, image);
-
-		assertClassInvariants();
+		return ESTIMATED_BASE_SIZE + 2L * (ownerId.length() + tags.asString().length());
 	}
 
 	/**
@@ -470,24 +478,29 @@ public class Photo extends DataObject {
 	public double getPraise() {
 		assertClassInvariants();
 
-		return (double) praiseSum / noVotes;
+		PraiseCount votes = PraiseCounterManager.getInstance().getPraiseCount(id);
+		return (double) (praiseSum + votes.getPraiseSum()) / (noVotes + votes.getNoVotes());
 	}
 
 	/**
-	 *
+	 * @methodtype get
 	 */
-	public void addToPraise(int value) {
+	public long getNoVotes() {
 		assertClassInvariants();
 
-		int newPraiseSum = praiseSum + value;
+		return noVotes + PraiseCounterManager.getInstance().getPraiseCount(id).getNoVotes();
+	}
 
-		// preconditions
-		assertIsValidPraiseSum(newPraiseSum);
+	/**
+	 * Votes are written to sharded counters, the photo itself does not change.
+	 */
+	public void addToPraise(int value) {
+		assertClassInvariants();
 
-		praiseSum = newPraiseSum;
+		// preconditions
+		assertIsValidPraiseValue(value);
 
-		noVotes += 1;
-		incWriteCount();
+		PraiseCounterManager.getInstance().addPraise(id, value);
 
 		assertClassInvariants();
 	}
@@ -594,7 +607,7 @@ public class Photo extends DataObject {
 	public boolean hasNewPraise() {
 		assertClassInvariants();
 
-		return noVotes > noVotesAtLastNotification;
+		return getNoVotes() > noVotesAtLastNotification;
 	}
 
 	/**
@@ -603,7 +616,7 @@ public class Photo extends DataObject {
 	public void setNoNewPraise() {
 		assertClassInvariants();
 
-		noVotesAtLastNotification = noVotes;
+		noVotesAtLastNotification = getNoVotes();
 		incWriteCount();
 	}
 
@@ -617,9 +630,11 @@ public class Photo extends DataObject {
 	}
 
 	/**
+	 * Photos are indexed by their location, so change it through PhotoManager.setPhotoLocation.
+	 *
 	 * @methodtype set
 	 */
-	public void setLocation(Location location) {
+	void setLocation(Location location) {
 		assertClassInvariants();
 
 		// preconditions
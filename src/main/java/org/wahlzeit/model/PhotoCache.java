@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.SegmentedLruCache;
+
+import java.util.logging.Logger;
+
+/**
+ * Bounded in-memory cache for photos used by the PhotoManager.
+ *
+ * Photos are weighed by their estimated size. Dirty photos are never evicted, they become evictable once they have
+ * been written to the datastore. Evicted photos are loaded again through the PhotoFactory on their next access.
+ */
+public class PhotoCache extends SegmentedLruCache<PhotoId, Photo> {
+
+	private static final Logger log = Logger.getLogger(PhotoCache.class.getName());
+
+	/**
+	 * Limits can be overridden by these system properties, see appengine-web.xml
+	 */
+	public static final String MAX_ENTRIES_PROPERTY = "wahlzeit.photoCache.maxEntries";
+	public static final String MAX_BYTES_PROPERTY = "wahlzeit.photoCache.maxBytes";
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PhotoCache() {
+		this(Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES),
+				Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PhotoCache(int maxEntries, long maxBytes) {
+		super(maxEntries, maxBytes);
+	}
+
+	@Override
+	protected long weigh(Photo photo) {
+		return photo.getEstimatedSize();
+	}
+
+	@Override
+	protected boolean isEvictable(Photo photo) {
+		return !photo.isDirty();
+	}
+
+	@Override
+	protected void onEviction(PhotoId id, Photo photo) {
+		log.config(LogBuilder.createSystemMessage().
+				addAction("evict photo from cache").
+				addParameter("photo ID", id.asString()).toString());
+	}
+
+}
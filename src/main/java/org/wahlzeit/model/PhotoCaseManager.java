@@ -21,6 +21,7 @@
 package org.wahlzeit.model;
 
 import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.WriteStatistics;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -111,10 +112,8 @@ public class PhotoCaseManager extends ObjectManager {
 	/**
 	 * @methodtype command
 	 */
-	public void savePhotoCases() {
-		if (openPhotoCases != null && openPhotoCases.size() > 0) {
-			updateObjects(openPhotoCases.values());
-		}
+	public WriteStatistics savePhotoCases() {
+		return writeObjects(getDirtyObjects(PhotoCase.class));
 	}
 
 	/**
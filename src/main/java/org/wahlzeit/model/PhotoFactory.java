@@ -21,8 +21,13 @@
 package org.wahlzeit.model;
 
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
 import org.wahlzeit.utils.PatternInstance;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -41,6 +46,9 @@ import java.util.logging.Logger;
     }
 )
 public class PhotoFactory {
+
+	private static final Logger log = Logger.getLogger(PhotoFactory.class.getName());
+
 	/**
 	 * @methodtype assertation
 	 */
@@ -62,7 +70,7 @@ public class PhotoFactory {
 	 * @methodtype factory
 	 */
 	public Photo createPhoto() {
-		return new Photo();
+		return new Photo(PhotoId.getNextId());
 	}
 
 	/**
@@ -76,19 +84,36 @@ public class PhotoFactory {
 	}
 
 	/**
-	 * Loads a photo. The Java object is loaded from the Google Datastore, the Images in all sizes are loaded from the
-	 * Google Cloud storage.
+	 * Loads a photo from the Google Datastore by its id. Returns null if there is no such photo. The images are not
+	 * loaded here, they are read from the ImageStorage when they are requested.
 	 */
 	public Photo loadPhoto(PhotoId id) {
-	   /* Photo result =
-                OfyService.ofy().load().type(Photo.class).ancestor(KeyFactory.createKey("Application", "Wahlzeit")).filter(Photo.ID, id).first().now();
-        for (PhotoSize size : PhotoSize.values()) {
-            GcsFilename gcsFilename = new GcsFilename("picturebucket", filename);
+		// preconditions
+		assertNotNull(id);
+
+		log.config(LogBuilder.createSystemMessage().
+				addAction("load photo from datastore").
+				addParameter("photo ID", id.asString()).toString());
 
+		return OfyService.ofy().load().type(Photo.class).parent(ObjectManager.applicationRootKey).id(id.asInt()).now();
+	}
+
+	/**
+	 * Loads the photos with the given ids with one datastore read. Ids without a photo are left out.
+	 */
+	public Collection<Photo> loadPhotos(Collection<PhotoId> ids) {
+		// preconditions
+		assertNotNull(ids);
 
+		log.config(LogBuilder.createSystemMessage().
+				addAction("load photos from datastore").
+				addParameter("number of photos", ids.size()).toString());
 
-        }*/
-		return null;
+		List<Long> idLongs = new ArrayList<Long>(ids.size());
+		for (PhotoId id : ids) {
+			idLongs.add((long) id.asInt());
+		}
+		return OfyService.ofy().load().type(Photo.class).parent(ObjectManager.applicationRootKey).ids(idLongs).values();
 	}
 
 
@@ -23,10 +23,11 @@ package org.wahlzeit.model;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.utils.StringUtil;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.logging.Logger;
@@ -39,11 +40,23 @@ public class PhotoFilter implements Serializable {
 
 	private static Logger log = Logger.getLogger(PhotoFilter.class.getName());
 
+	/**
+	 * The value computed for the first version stored in sessions, so that these can still be read
+	 */
+	private static final long serialVersionUID = 5181842915329378460L;
+
 	/**
 	 *
 	 */
 	public static final String USER_NAME = "userName";
 	public static final String TAGS = "tags";
+	public static final String NEAR = "near";
+
+	/**
+	 * Prefix of the filter condition for photos near a location, e.g. "near:1.0,2.0,3.0,0.5" for the photos within
+	 * distance 0.5 of the Cartesian coordinate (1, 2, 3)
+	 */
+	public static final String NEAR_PREFIX = "near:";
 
 	/**
 	 *
@@ -52,11 +65,24 @@ public class PhotoFilter implements Serializable {
 	protected Tags tags = Tags.EMPTY_TAGS;
 
 	/**
-	 *
+	 * Center and radius of the near condition, as Cartesian values; the condition is unset if the radius is negative
+	 */
+	protected double nearX = 0;
+	protected double nearY = 0;
+	protected double nearZ = 0;
+	protected double nearRadius = -1;
+
+	/**
+	 * The displayable photo ids are computed again before each use, so they are not stored in the session
+	 */
+	protected transient List<PhotoId> displayablePhotoIds;
+	protected PhotoIdSet processedPhotoIds = new PhotoIdSet();
+	protected PhotoIdSet skippedPhotoIds = new PhotoIdSet();
+
+	/**
+	 * Number of random picks among all visible photos before falling back to computing the remaining candidates
 	 */
-	protected List<PhotoId> displayablePhotoIds;
-	protected List<PhotoId> processedPhotoIds = new LinkedList<PhotoId>();
-	protected List<PhotoId> skippedPhotoIds = new LinkedList<PhotoId>();
+	public static final int MAX_SAMPLING_ATTEMPTS = 16;
 
 	/**
 	 *
@@ -83,6 +109,7 @@ public class PhotoFilter implements Serializable {
 	public void clear() {
 		setUserName("");
 		setTags(Tags.EMPTY_TAGS);
+		clearNear();
 		displayablePhotoIds.clear();
 		processedPhotoIds.clear();
 	}
@@ -110,6 +137,78 @@ public class PhotoFilter implements Serializable {
 		resetDisplayablePhotoIds();
 	}
 
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasNear() {
+		return nearRadius >= 0;
+	}
+
+	/**
+	 * Returns the near condition as "x,y,z,radius", an empty string if it is not set.
+	 *
+	 * @methodtype get
+	 */
+	public String getNear() {
+		if (!hasNear()) {
+			return "";
+		}
+		return nearX + "," + nearY + "," + nearZ + "," + nearRadius;
+	}
+
+	/**
+	 * Restricts the photos to those within the radius of the center.
+	 *
+	 * @methodtype set
+	 */
+	public void setNear(Coordinate center, double radius) {
+		if (!(radius >= 0)) {
+			throw new IllegalArgumentException("radius should not be negative");
+		}
+
+		CartesianCoordinate cartesianCenter = center.asCartesianCoordinate();
+		nearX = cartesianCenter.getX();
+		nearY = cartesianCenter.getY();
+		nearZ = cartesianCenter.getZ();
+		nearRadius = radius;
+		resetDisplayablePhotoIds();
+	}
+
+	/**
+	 * Sets the near condition from "x,y,z,radius"; an empty string clears it.
+	 *
+	 * @methodtype set
+	 */
+	public void setNear(String near) throws IllegalArgumentException {
+		if (StringUtil.isNullOrEmptyString(near)) {
+			clearNear();
+			return;
+		}
+
+		String[] values = near.split(",");
+		if (values.length != 4) {
+			throw new IllegalArgumentException("near should be given as x,y,z,radius: " + near);
+		}
+
+		try {
+			double x = Double.parseDouble(values[0].trim());
+			double y = Double.parseDouble(values[1].trim());
+			double z = Double.parseDouble(values[2].trim());
+			double radius = Double.parseDouble(values[3].trim());
+			setNear(new CartesianCoordinate(x, y, z), radius);
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("near should be given as x,y,z,radius: " + near, ex);
+		}
+	}
+
+	/**
+	 * @methodtype set
+	 */
+	public void clearNear() {
+		nearRadius = -1;
+		resetDisplayablePhotoIds();
+	}
+
 	/**
 	 *
 	 */
@@ -134,6 +233,10 @@ public class PhotoFilter implements Serializable {
 		for (int i = 0; i < tags.length; i++) {
 			filterConditions.add("tg:" + tags[i]);
 		}
+
+		if (hasNear()) {
+			filterConditions.add(NEAR_PREFIX + getNear());
+		}
 	}
 
 	/**
@@ -148,14 +251,35 @@ public class PhotoFilter implements Serializable {
 	 */
 	public PhotoId getRandomDisplayablePhotoId() {
 		if (!displayablePhotoIds.isEmpty()) {
-			int size = displayablePhotoIds.size();
-			int index = ((randomNumber.nextInt() % size) + size) / 2;
+			int index = randomNumber.nextInt(displayablePhotoIds.size());
 			return displayablePhotoIds.get(index);
 		} else {
 			return PhotoId.NULL_ID;
 		}
 	}
 
+	/**
+	 * Get a random visible photo that has been neither rated nor skipped. Without filter conditions, random picks
+	 * among all visible photos are tried first, which does not depend on the number of photos. The displayable photo
+	 * ids are only computed if the filter has conditions or most picks have already been seen.
+	 */
+	public PhotoId getRandomDisplayablePhotoId(VisiblePhotoIds visiblePhotoIds) {
+		if (getFilterConditions().isEmpty()) {
+			for (int i = 0; i < MAX_SAMPLING_ATTEMPTS; i++) {
+				PhotoId candidate = visiblePhotoIds.getRandomId(randomNumber);
+				if (candidate.isNullId()) {
+					break;
+				}
+				if (!processedPhotoIds.contains(candidate) && !skippedPhotoIds.contains(candidate)) {
+					return candidate;
+				}
+			}
+		}
+
+		generateDisplayablePhotoIds();
+		return getRandomDisplayablePhotoId();
+	}
+
 	/**
 	 *
 	 */
@@ -180,7 +304,7 @@ public class PhotoFilter implements Serializable {
 	/**
 	 *
 	 */
-	public List<PhotoId> getProcessedPhotoIds() {
+	public PhotoIdSet getProcessedPhotoIds() {
 		return processedPhotoIds;
 	}
 
@@ -188,10 +312,6 @@ public class PhotoFilter implements Serializable {
 	 *
 	 */
 	public boolean isProcessedPhotoId(PhotoId photoId) {
-		log.info("photoId: " + photoId.asString());
-		for (PhotoId id : processedPhotoIds) {
-			log.info("Processed id: " + id.asString());
-		}
 		return processedPhotoIds.contains(photoId);
 	}
 
@@ -211,14 +331,14 @@ public class PhotoFilter implements Serializable {
 	/**
 	 * @methodtype get
 	 */
-	public List<PhotoId> getSkippedPhotoIds() {
+	public PhotoIdSet getSkippedPhotoIds() {
 		return skippedPhotoIds;
 	}
 
 	/**
 	 * @methodtype set
 	 */
-	public void setSkippedPhotoIds(List<PhotoId> skippedPhotoIds) {
+	public void setSkippedPhotoIds(PhotoIdSet skippedPhotoIds) {
 		this.skippedPhotoIds = skippedPhotoIds;
 	}
 
@@ -226,9 +346,7 @@ public class PhotoFilter implements Serializable {
 	 * @methodtype set
 	 */
 	public void addSkippedPhotoId(PhotoId skippedPhotoId) {
-		if (!skippedPhotoIds.contains(skippedPhotoId)) {
-			skippedPhotoIds.add(skippedPhotoId);
-		}
+		skippedPhotoIds.add(skippedPhotoId);
 	}
 
 	/**
@@ -236,38 +354,45 @@ public class PhotoFilter implements Serializable {
 	 */
 	protected List<PhotoId> getFilteredPhotoIds() {
 		// get all tags that match the filter conditions
-		List<PhotoId> result = new LinkedList<PhotoId>();
+		List<PhotoId> result = new ArrayList<PhotoId>();
 		int noFilterConditions = getFilterConditions().size();
 		log.config(LogBuilder.createSystemMessage().
 				addParameter("Number of filter conditions", String.valueOf(noFilterConditions)).toString());
 
-		Collection<PhotoId> candidates;
-		if (noFilterConditions == 0) {
-			candidates = SingletonManager.getPhotoManager().getPhotoCache().keySet();
-		} else {
-			List<Tag> tags = new LinkedList<Tag>();
-			candidates = new LinkedList<PhotoId>();
-			for (String condition : getFilterConditions()) {
-				SingletonManager.getPhotoManager().addTagsThatMatchCondition(tags, condition);
-			}
-			// get the list of all photo ids that correspond to the tags
-			for (Tag tag : tags) {
-				candidates.add(PhotoId.getIdFromString(tag.getPhotoId()));
+		PhotoManager photoManager = SingletonManager.getPhotoManager();
+		VisiblePhotoIds visiblePhotoIds = photoManager.getVisiblePhotoIds();
+		List<String> tagConditions = new ArrayList<String>();
+		for (String condition : getFilterConditions()) {
+			if (isTagCondition(condition)) {
+				tagConditions.add(condition);
 			}
 		}
 
+		PhotoIdSet candidates = null;
+		if (!tagConditions.isEmpty()) {
+			// photos that match any of the tag conditions, looked up in memory
+			TagIndex tagIndex = photoManager.getTagIndex();
+			candidates = tagIndex.getPhotoIdsForAny(tagConditions);
+		}
+		if (noFilterConditions != 0) {
+			candidates = restrictPhotoIds(candidates, photoManager);
+		}
+		if (candidates == null) {
+			candidates = visiblePhotoIds.asPhotoIdSet();
+		}
+		candidates.removeAll(processedPhotoIds);
+		candidates.removeAll(skippedPhotoIds);
+
 		int newPhotos = 0;
 		for (PhotoId candidateId : candidates) {
-			Photo photoCandidate = SingletonManager.getPhotoManager().getPhoto(candidateId);
-			if (!processedPhotoIds.contains(candidateId) && !skippedPhotoIds.contains(candidateId) &&
-					photoCandidate.isVisible()) {
+			if (visiblePhotoIds.contains(candidateId)) {
 				result.add(candidateId);
 				++newPhotos;
 			}
 		}
 		int skippedPhotos = skippedPhotoIds.size();
 		if (newPhotos == 0 && skippedPhotos > 0) {
-			result.addAll(skippedPhotoIds);
+			result.addAll(skippedPhotoIds.asList());
 			newPhotos = skippedPhotos;
 		}
 
@@ -276,4 +401,82 @@ public class PhotoFilter implements Serializable {
 
 		return result;
 	}
+
+	/**
+	 * Returns true if the condition is looked up in the TagIndex; all other conditions restrict the photos matching
+	 * the tag conditions in restrictPhotoIds.
+	 *
+	 * @methodtype boolean-query
+	 */
+	protected boolean isTagCondition(String condition) {
+		return !condition.startsWith(NEAR_PREFIX);
+	}
+
+	/**
+	 * Restricts the candidates to the photos matching the conditions that are not tag conditions. Candidates are
+	 * null if there is no tag condition; null is returned if nothing restricts the photos.
+	 *
+	 * @methodtype get
+	 */
+	protected PhotoIdSet restrictPhotoIds(PhotoIdSet candidates, PhotoManager photoManager) {
+		if (hasNear()) {
+			candidates = intersect(candidates, getPhotoIdsNear(photoManager));
+		}
+		return candidates;
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static PhotoIdSet intersect(PhotoIdSet candidates, PhotoIdSet photoIds) {
+		if (candidates == null) {
+			return photoIds;
+		}
+		candidates.retainAll(photoIds);
+		return candidates;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected PhotoIdSet getPhotoIdsNear(PhotoManager photoManager) {
+		CartesianCoordinate center = new CartesianCoordinate(nearX, nearY, nearZ);
+		return photoManager.getLocationIndex().getPhotoIdsWithin(center, nearRadius);
+	}
+
+	/**
+	 * Reads the fields one by one, so that filters of the first version, with lists of processed and skipped photo
+	 * ids and without near condition, can still be read from stored sessions. Displayable photo ids stored by the
+	 * first version are dropped.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		userName = (String) fields.get(USER_NAME, "");
+		tags = (Tags) fields.get(TAGS, Tags.EMPTY_TAGS);
+		nearX = fields.get("nearX", 0.0);
+		nearY = fields.get("nearY", 0.0);
+		nearZ = fields.get("nearZ", 0.0);
+		nearRadius = fields.get("nearRadius", -1.0);
+		resetDisplayablePhotoIds();
+		processedPhotoIds = asPhotoIdSet(fields.get("processedPhotoIds", null));
+		skippedPhotoIds = asPhotoIdSet(fields.get("skippedPhotoIds", null));
+		randomNumber = (Random) fields.get("randomNumber", new Random(System.currentTimeMillis()));
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static PhotoIdSet asPhotoIdSet(Object photoIds) {
+		if (photoIds instanceof PhotoIdSet) {
+			return (PhotoIdSet) photoIds;
+		}
+
+		PhotoIdSet result = new PhotoIdSet();
+		if (photoIds instanceof Collection) {
+			for (Object photoId : (Collection<?>) photoIds) {
+				result.add((PhotoId) photoId);
+			}
+		}
+		return result;
+	}
 }
@@ -22,6 +22,7 @@ package org.wahlzeit.model;
 
 import java.io.Serializable;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A photo id identifies a photo with a unique number.
@@ -31,14 +32,20 @@ import java.util.Random;
 public class PhotoId implements Serializable {
 
 	/**
-	 * 0 is never returned from nextValue; first value is 1
+	 * The value computed for the first version stored in sessions, so that these can still be read
 	 */
-	protected static int currentId = 0;
+	private static final long serialVersionUID = -2927979549359048044L;
 
 	/**
-	 *
+	 * Highest id that may be in use, by this or, as far as known, by other instances; 0 if there is none
+	 */
+	protected static final AtomicInteger currentId = new AtomicInteger(0);
+
+	/**
+	 * Size of the blocks of ids that are leased at once, can be overridden by this system property
 	 */
-	public static final int BUFFER_SIZE_INCREMENT = 64;
+	public static final String BLOCK_SIZE_PROPERTY = "wahlzeit.photoId.blockSize";
+	public static final int DEFAULT_BLOCK_SIZE = 100;
 
 	/**
 	 *
@@ -46,9 +53,13 @@ public class PhotoId implements Serializable {
 	public static final PhotoId NULL_ID = new PhotoId(0);
 
 	/**
-	 *
+	 * The one instance of each id
 	 */
-	protected static PhotoId[] ids = new PhotoId[BUFFER_SIZE_INCREMENT];
+	protected static final PhotoIdTable ids = new PhotoIdTable();
+
+	static {
+		ids.putIfAbsent(NULL_ID);
+	}
 
 	/**
 	 * What a hack :-)
@@ -60,6 +71,17 @@ public class PhotoId implements Serializable {
 	 */
 	protected static Random randomNumber = new Random(System.currentTimeMillis());
 
+	/**
+	 * Leases blocks of ids that no other instance uses; without leaser, all ids after currentId are used.
+	 */
+	protected static PhotoIdLeaser leaser = null;
+
+	/**
+	 * The block new ids are taken from; 0 is never returned from nextValue; first value is 1
+	 */
+	protected static volatile IdBlock idBlock = new IdBlock(1, Integer.MAX_VALUE);
+	protected static final Object leaseLock = new Object();
+
 	private PhotoId() {
 		// do nothing, necessary for Objectify to load PhotoIds
 	}
@@ -68,52 +90,65 @@ public class PhotoId implements Serializable {
 	 *
 	 */
 	public static int getCurrentIdAsInt() {
-		return currentId;
+		return currentId.get();
 	}
 
 	/**
-	 *
+	 * Sets the highest id in use. New ids are taken after it, from a newly leased block if there is a leaser.
 	 */
 	public static synchronized void setCurrentIdFromInt(int id) {
-		currentId = id;
-		ids = new PhotoId[currentId + BUFFER_SIZE_INCREMENT];
-		ids[0] = NULL_ID;
+		currentId.set(id);
+		idBlock = (leaser != null) ? IdBlock.EMPTY : new IdBlock(id + 1, Integer.MAX_VALUE);
 	}
 
 	/**
-	 *
+	 * @methodtype set
 	 */
-	public static synchronized int getNextIdAsInt() {
-		currentId += 1;
-		if (currentId >= ids.length) {
-			PhotoId[] nids = new PhotoId[currentId + BUFFER_SIZE_INCREMENT];
-			System.arraycopy(ids, 0, nids, 0, currentId);
-			ids = nids;
-		}
-		return currentId;
+	public static synchronized void setLeaser(PhotoIdLeaser newLeaser) {
+		leaser = newLeaser;
+		idBlock = (leaser != null) ? IdBlock.EMPTY : new IdBlock(getCurrentIdAsInt() + 1, Integer.MAX_VALUE);
 	}
 
 	/**
-	 *
+	 * Hands out ids of the current block without locking; only leasing a new block is synchronized.
 	 */
-	public static PhotoId getIdFromInt(int id) {
-		if ((id < 0) || (id > currentId)) {
-			return NULL_ID;
+	public static int getNextIdAsInt() {
+		while (true) {
+			IdBlock block = idBlock;
+			int result = block.takeNextId();
+			if (result != IdBlock.EXHAUSTED) {
+				currentId.accumulateAndGet(result, Math::max);
+				return result;
+			}
+			leaseNextBlock(block);
 		}
+	}
 
-		// @FIXME http://en.wikipedia.org/wiki/Double-checked_locking
-		PhotoId result = ids[id];
-		if (result == null) {
-			synchronized (ids) {
-				result = ids[id];
-				if (result == null) {
-					result = new PhotoId(id);
-					ids[id] = result;
-				}
+	/**
+	 * @methodtype command
+	 */
+	protected static void leaseNextBlock(IdBlock exhaustedBlock) {
+		synchronized (leaseLock) {
+			if (idBlock != exhaustedBlock) {
+				return; // some other thread leased a block already
 			}
+
+			int blockSize = Integer.getInteger(BLOCK_SIZE_PROPERTY, DEFAULT_BLOCK_SIZE);
+			int start = leaser.leasePhotoIds(blockSize);
+			currentId.accumulateAndGet(start + blockSize - 1, Math::max);
+			idBlock = new IdBlock(start, start + blockSize);
 		}
+	}
 
-		return result;
+	/**
+	 * Returns the one instance for the id, NULL_ID if the id is not in use.
+	 */
+	public static PhotoId getIdFromInt(int id) {
+		if ((id < 0) || (id > getCurrentIdAsInt())) {
+			return NULL_ID;
+		}
+
+		return ids.get(id);
 	}
 
 	/**
@@ -208,38 +243,43 @@ public class PhotoId implements Serializable {
 	 *
 	 */
 	public static String getFromInt(int id) {
-		StringBuffer result = new StringBuffer(10);
-
-		id += ID_START;
-		for (; id > 0; id = id / 36) {
-			char letterOrDigit;
-			int modulus = id % 36;
-			if (modulus < 10) {
-				letterOrDigit = (char) ((int) '0' + modulus);
-			} else {
-				letterOrDigit = (char) ((int) 'a' - 10 + modulus);
-			}
-			result.insert(0, letterOrDigit);
-
+		// fill from the end, the longest value is "x" plus 7 base-36 digits
+		char[] result = new char[8];
+		int start = result.length;
+
+		long value = (long) id + ID_START;
+		for (; value > 0; value = value / 36) {
+			int modulus = (int) (value % 36);
+			result[--start] = (char) ((modulus < 10) ? ('0' + modulus) : ('a' - 10 + modulus));
 		}
+		result[--start] = 'x';
 
-		return "x" + result.toString();
+		return new String(result, start, result.length - start);
 	}
 
 	/**
-	 *
+	 * Parses the value without allocating; returns 0 for anything that is not a valid id string.
 	 */
 	public static int getFromString(String value) {
-		int result = 0;
+		if (value == null || value.length() < 2 || value.charAt(0) != 'x') {
+			return 0;
+		}
+
+		long result = 0;
 		for (int i = 1; i < value.length(); i++) {
-			int temp = 0;
 			char letterOrDigit = value.charAt(i);
-			if (letterOrDigit < 'a') {
-				temp = (int) letterOrDigit - '0';
+			int temp;
+			if (letterOrDigit >= '0' && letterOrDigit <= '9') {
+				temp = letterOrDigit - '0';
+			} else if (letterOrDigit >= 'a' && letterOrDigit <= 'z') {
+				temp = 10 + letterOrDigit - 'a';
 			} else {
-				temp = 10 + (int) letterOrDigit - 'a';
+				return 0;
 			}
 			result = result * 36 + temp;
+			if (result > Integer.MAX_VALUE + (long) ID_START) {
+				return 0;
+			}
 		}
 
 		result -= ID_START;
@@ -247,7 +287,45 @@ public class PhotoId implements Serializable {
 			result = 0;
 		}
 
-		return result;
+		return (int) result;
+	}
+
+	/**
+	 * A range of ids from next (inclusive) to end (exclusive)
+	 */
+	protected static class IdBlock {
+
+		protected static final IdBlock EMPTY = new IdBlock(0, 0);
+
+		protected static final int EXHAUSTED = -1;
+
+		protected final AtomicInteger next;
+		protected final int end;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected IdBlock(int next, int end) {
+			this.next = new AtomicInteger(next);
+			this.end = end;
+		}
+
+		/**
+		 * Returns the next id of the block, EXHAUSTED if there is none; an exhausted block is never incremented.
+		 *
+		 * @methodtype command
+		 */
+		protected int takeNextId() {
+			while (true) {
+				int result = next.get();
+				if (result >= end) {
+					return EXHAUSTED;
+				}
+				if (next.compareAndSet(result, result + 1)) {
+					return result;
+				}
+			}
+		}
 	}
 
 }
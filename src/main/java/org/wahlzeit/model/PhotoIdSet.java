@@ -0,0 +1,706 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact set of photo ids, stored as a compressed bitmap of PhotoId.asInt().
+ *
+ * The ids are partitioned by their upper 16 bits into chunks of 65536. Each chunk is stored as a sorted array while it
+ * is sparse and as a plain bitmap once it holds more than ARRAY_CONTAINER_MAX ids (the layout of roaring bitmaps).
+ * Set operations work chunk by chunk. The serialized form only contains the containers, which keeps sessions small.
+ *
+ * Not thread-safe, callers that share an instance have to synchronize.
+ */
+public class PhotoIdSet implements Iterable<PhotoId>, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Chunks with more ids are stored as bitmaps; at 4096 ids both forms need 8 KB
+	 */
+	protected static final int ARRAY_CONTAINER_MAX = 4096;
+
+	/**
+	 * Upper 16 bits of the ids in the chunk, ascending; containers[i] holds the chunk of keys[i]
+	 */
+	protected transient char[] keys = new char[0];
+	protected transient Container[] containers = new Container[0];
+	protected transient int noContainers = 0;
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PhotoIdSet() {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PhotoIdSet(PhotoIdSet other) {
+		keys = Arrays.copyOf(other.keys, other.noContainers);
+		containers = new Container[other.noContainers];
+		for (int i = 0; i < other.noContainers; i++) {
+			containers[i] = other.containers[i].copy();
+		}
+		noContainers = other.noContainers;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(PhotoId id) {
+		return id != null && contains(id.asInt());
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean contains(int id) {
+		int i = findContainer(highBits(id));
+		return i >= 0 && containers[i].contains(lowBits(id));
+	}
+
+	/**
+	 * Returns true if the id was not contained before.
+	 *
+	 * @methodtype command
+	 */
+	public boolean add(PhotoId id) {
+		return add(id.asInt());
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public boolean add(int id) {
+		assertIsValidId(id);
+
+		char high = highBits(id);
+		int i = findContainer(high);
+		if (i < 0) {
+			i = -i - 1;
+			insertContainer(i, high, new ArrayContainer());
+		}
+
+		Container container = containers[i];
+		int oldCardinality = container.getCardinality();
+		containers[i] = container.add(lowBits(id));
+		return containers[i].getCardinality() > oldCardinality;
+	}
+
+	/**
+	 * Returns true if the id was contained before.
+	 *
+	 * @methodtype command
+	 */
+	public boolean remove(PhotoId id) {
+		return id != null && remove(id.asInt());
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public boolean remove(int id) {
+		int i = findContainer(highBits(id));
+		if (i < 0 || !containers[i].contains(lowBits(id))) {
+			return false;
+		}
+
+		containers[i] = containers[i].remove(lowBits(id));
+		if (containers[i].getCardinality() == 0) {
+			removeContainer(i);
+		}
+		return true;
+	}
+
+	/**
+	 * Union, modifies this set.
+	 *
+	 * @methodtype command
+	 */
+	public void addAll(PhotoIdSet other) {
+		for (int j = 0; j < other.noContainers; j++) {
+			int i = findContainer(other.keys[j]);
+			if (i < 0) {
+				insertContainer(-i - 1, other.keys[j], other.containers[j].copy());
+			} else {
+				containers[i] = containers[i].or(other.containers[j]);
+			}
+		}
+	}
+
+	/**
+	 * Intersection, modifies this set.
+	 *
+	 * @methodtype command
+	 */
+	public void retainAll(PhotoIdSet other) {
+		int kept = 0;
+		for (int i = 0; i < noContainers; i++) {
+			int j = other.findContainer(keys[i]);
+			if (j >= 0) {
+				Container result = containers[i].and(other.containers[j]);
+				if (result.getCardinality() > 0) {
+					keys[kept] = keys[i];
+					containers[kept] = result;
+					kept++;
+				}
+			}
+		}
+		truncate(kept);
+	}
+
+	/**
+	 * Difference (and-not), modifies this set.
+	 *
+	 * @methodtype command
+	 */
+	public void removeAll(PhotoIdSet other) {
+		int kept = 0;
+		for (int i = 0; i < noContainers; i++) {
+			Container result = containers[i];
+			int j = other.findContainer(keys[i]);
+			if (j >= 0) {
+				result = result.andNot(other.containers[j]);
+			}
+			if (result.getCardinality() > 0) {
+				keys[kept] = keys[i];
+				containers[kept] = result;
+				kept++;
+			}
+		}
+		truncate(kept);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		truncate(0);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		int result = 0;
+		for (int i = 0; i < noContainers; i++) {
+			result += containers[i].getCardinality();
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isEmpty() {
+		return noContainers == 0;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public List<PhotoId> asList() {
+		List<PhotoId> result = new ArrayList<PhotoId>(size());
+		for (PhotoId id : this) {
+			result.add(id);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the ids in ascending order.
+	 *
+	 * @methodtype conversion
+	 */
+	public int[] asIntArray() {
+		int[] result = new int[size()];
+		int n = 0;
+		for (int i = 0; i < noContainers; i++) {
+			n = containers[i].copyTo(result, n, keys[i] << 16);
+		}
+		return result;
+	}
+
+	/**
+	 * Iterates in ascending order of the ids.
+	 */
+	@Override
+	public Iterator<PhotoId> iterator() {
+		final int[] ids = asIntArray();
+		return new Iterator<PhotoId>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < ids.length;
+			}
+
+			@Override
+			public PhotoId next() {
+				if (next >= ids.length) {
+					throw new NoSuchElementException();
+				}
+				return PhotoId.getIdFromInt(ids[next++]);
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof PhotoIdSet && Arrays.equals(asIntArray(), ((PhotoIdSet) obj).asIntArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(asIntArray());
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected void assertIsValidId(int id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("photo id must not be negative: " + id);
+		}
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static char highBits(int id) {
+		return (char) (id >>> 16);
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	protected static char lowBits(int id) {
+		return (char) id;
+	}
+
+	/**
+	 * Returns the index of the container, or (-(insertion point) - 1) if there is none.
+	 *
+	 * @methodtype helper
+	 */
+	protected int findContainer(char high) {
+		return Arrays.binarySearch(keys, 0, noContainers, high);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void insertContainer(int index, char high, Container container) {
+		if (noContainers == keys.length) {
+			int newLength = Math.max(4, noContainers * 2);
+			keys = Arrays.copyOf(keys, newLength);
+			containers = Arrays.copyOf(containers, newLength);
+		}
+		System.arraycopy(keys, index, keys, index + 1, noContainers - index);
+		System.arraycopy(containers, index, containers, index + 1, noContainers - index);
+		keys[index] = high;
+		containers[index] = container;
+		noContainers++;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void removeContainer(int index) {
+		System.arraycopy(keys, index + 1, keys, index, noContainers - index - 1);
+		System.arraycopy(containers, index + 1, containers, index, noContainers - index - 1);
+		truncate(noContainers - 1);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void truncate(int newNoContainers) {
+		Arrays.fill(containers, newNoContainers, noContainers, null);
+		noContainers = newNoContainers;
+	}
+
+	/**
+	 * Writes chunk key, container type and content of each container.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(noContainers);
+		for (int i = 0; i < noContainers; i++) {
+			out.writeChar(keys[i]);
+			containers[i].writeTo(out);
+		}
+	}
+
+	/**
+	 *
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		noContainers = in.readInt();
+		keys = new char[noContainers];
+		containers = new Container[noContainers];
+		for (int i = 0; i < noContainers; i++) {
+			keys[i] = in.readChar();
+			containers[i] = Container.readFrom(in);
+		}
+	}
+
+	/**
+	 * Holds the lower 16 bits of the ids of one chunk. Operations may return a different container type.
+	 */
+	protected abstract static class Container {
+
+		protected static final byte ARRAY_TYPE = 0;
+		protected static final byte BITMAP_TYPE = 1;
+
+		public abstract boolean contains(char value);
+
+		public abstract Container add(char value);
+
+		public abstract Container remove(char value);
+
+		public abstract int getCardinality();
+
+		public abstract Container copy();
+
+		public abstract BitmapContainer asBitmap();
+
+		/**
+		 * Writes the ids, offset by base, into target starting at index and returns the next index.
+		 */
+		public abstract int copyTo(int[] target, int index, int base);
+
+		public abstract void writeTo(ObjectOutputStream out) throws IOException;
+
+		public abstract Container or(Container other);
+
+		public abstract Container and(Container other);
+
+		public abstract Container andNot(Container other);
+
+		public static Container readFrom(ObjectInputStream in) throws IOException {
+			byte type = in.readByte();
+			if (type == ARRAY_TYPE) {
+				ArrayContainer result = new ArrayContainer(in.readInt());
+				for (int i = 0; i < result.values.length; i++) {
+					result.values[i] = in.readChar();
+				}
+				result.cardinality = result.values.length;
+				return result;
+			} else if (type == BITMAP_TYPE) {
+				BitmapContainer result = new BitmapContainer();
+				for (int i = 0; i < result.words.length; i++) {
+					result.words[i] = in.readLong();
+				}
+				result.updateCardinality();
+				return result;
+			}
+			throw new IOException("unknown container type: " + type);
+		}
+	}
+
+	/**
+	 * Sorted array of values, for sparse chunks.
+	 */
+	protected static class ArrayContainer extends Container {
+
+		protected char[] values;
+		protected int cardinality = 0;
+
+		protected ArrayContainer() {
+			this(4);
+		}
+
+		protected ArrayContainer(int capacity) {
+			values = new char[capacity];
+		}
+
+		@Override
+		public boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		@Override
+		public Container add(char value) {
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+			if (i >= 0) {
+				return this;
+			}
+			if (cardinality >= ARRAY_CONTAINER_MAX) {
+				return asBitmap().add(value);
+			}
+
+			i = -i - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_CONTAINER_MAX, Math.max(4, cardinality * 2)));
+			}
+			System.arraycopy(values, i, values, i + 1, cardinality - i);
+			values[i] = value;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		public Container remove(char value) {
+			int i = Arrays.binarySearch(values, 0, cardinality, value);
+			if (i >= 0) {
+				System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		@Override
+		public int getCardinality() {
+			return cardinality;
+		}
+
+		@Override
+		public Container copy() {
+			ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+			System.arraycopy(values, 0, result.values, 0, cardinality);
+			result.cardinality = cardinality;
+			return result;
+		}
+
+		@Override
+		public BitmapContainer asBitmap() {
+			BitmapContainer result = new BitmapContainer();
+			for (int i = 0; i < cardinality; i++) {
+				result.words[values[i] >>> 6] |= 1L << values[i];
+			}
+			result.cardinality = cardinality;
+			return result;
+		}
+
+		@Override
+		public int copyTo(int[] target, int index, int base) {
+			for (int i = 0; i < cardinality; i++) {
+				target[index++] = base | values[i];
+			}
+			return index;
+		}
+
+		@Override
+		public void writeTo(ObjectOutputStream out) throws IOException {
+			out.writeByte(ARRAY_TYPE);
+			out.writeInt(cardinality);
+			for (int i = 0; i < cardinality; i++) {
+				out.writeChar(values[i]);
+			}
+		}
+
+		@Override
+		public Container or(Container other) {
+			if (!(other instanceof ArrayContainer)) {
+				return other.or(this);
+			}
+
+			ArrayContainer that = (ArrayContainer) other;
+			ArrayContainer result = new ArrayContainer(Math.max(1, cardinality + that.cardinality));
+			int i = 0, j = 0;
+			while (i < cardinality || j < that.cardinality) {
+				char next;
+				if (j >= that.cardinality || (i < cardinality && values[i] < that.values[j])) {
+					next = values[i++];
+				} else if (i >= cardinality || that.values[j] < values[i]) {
+					next = that.values[j++];
+				} else {
+					next = values[i++];
+					j++;
+				}
+				result.values[result.cardinality++] = next;
+			}
+			return (result.cardinality > ARRAY_CONTAINER_MAX) ? result.asBitmap() : result;
+		}
+
+		@Override
+		public Container and(Container other) {
+			ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+			for (int i = 0; i < cardinality; i++) {
+				if (other.contains(values[i])) {
+					result.values[result.cardinality++] = values[i];
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public Container andNot(Container other) {
+			ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+			for (int i = 0; i < cardinality; i++) {
+				if (!other.contains(values[i])) {
+					result.values[result.cardinality++] = values[i];
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Plain bitmap of 65536 bits, for dense chunks.
+	 */
+	protected static class BitmapContainer extends Container {
+
+		protected final long[] words = new long[1024];
+		protected int cardinality = 0;
+
+		@Override
+		public boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		public Container add(char value) {
+			long before = words[value >>> 6];
+			long after = before | (1L << value);
+			words[value >>> 6] = after;
+			if (before != after) {
+				cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		public Container remove(char value) {
+			long before = words[value >>> 6];
+			long after = before & ~(1L << value);
+			words[value >>> 6] = after;
+			if (before != after) {
+				cardinality--;
+			}
+			return optimize();
+		}
+
+		@Override
+		public int getCardinality() {
+			return cardinality;
+		}
+
+		@Override
+		public Container copy() {
+			BitmapContainer result = new BitmapContainer();
+			System.arraycopy(words, 0, result.words, 0, words.length);
+			result.cardinality = cardinality;
+			return result;
+		}
+
+		@Override
+		public BitmapContainer asBitmap() {
+			return this;
+		}
+
+		@Override
+		public int copyTo(int[] target, int index, int base) {
+			for (int w = 0; w < words.length; w++) {
+				long word = words[w];
+				while (word != 0) {
+					target[index++] = base | (w << 6) | Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return index;
+		}
+
+		@Override
+		public void writeTo(ObjectOutputStream out) throws IOException {
+			out.writeByte(BITMAP_TYPE);
+			for (long word : words) {
+				out.writeLong(word);
+			}
+		}
+
+		@Override
+		public Container or(Container other) {
+			BitmapContainer that = other.asBitmap();
+			BitmapContainer result = new BitmapContainer();
+			for (int i = 0; i < words.length; i++) {
+				result.words[i] = words[i] | that.words[i];
+			}
+			result.updateCardinality();
+			return result;
+		}
+
+		@Override
+		public Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			BitmapContainer that = other.asBitmap();
+			BitmapContainer result = new BitmapContainer();
+			for (int i = 0; i < words.length; i++) {
+				result.words[i] = words[i] & that.words[i];
+			}
+			result.updateCardinality();
+			return result.optimize();
+		}
+
+		@Override
+		public Container andNot(Container other) {
+			BitmapContainer that = other.asBitmap();
+			BitmapContainer result = new BitmapContainer();
+			for (int i = 0; i < words.length; i++) {
+				result.words[i] = words[i] & ~that.words[i];
+			}
+			result.updateCardinality();
+			return result.optimize();
+		}
+
+		/**
+		 * Converts back to an array container if the bitmap has become sparse.
+		 */
+		protected Container optimize() {
+			if (cardinality > ARRAY_CONTAINER_MAX) {
+				return this;
+			}
+			ArrayContainer result = new ArrayContainer(Math.max(1, cardinality));
+			for (int w = 0; w < words.length; w++) {
+				long word = words[w];
+				while (word != 0) {
+					result.values[result.cardinality++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return result;
+		}
+
+		protected void updateCardinality() {
+			int result = 0;
+			for (long word : words) {
+				result += Long.bitCount(word);
+			}
+			cardinality = result;
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interns PhotoId instances, so that there is exactly one instance per id. The table consists of fixed-size segments
+ * that are added as needed and never copied. Looking up an existing id takes no lock; a new instance is published
+ * with compareAndSet, so all threads see the same one.
+ *
+ * Only the directory of segments grows by copying, and only while holding the lock that also guards adding segments.
+ */
+public class PhotoIdTable {
+
+	/**
+	 *
+	 */
+	public static final int SEGMENT_SHIFT = 10;
+	public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	public static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	/**
+	 *
+	 */
+	protected volatile AtomicReferenceArray<AtomicReferenceArray<PhotoId>> segments =
+			new AtomicReferenceArray<AtomicReferenceArray<PhotoId>>(16);
+
+	/**
+	 * Returns the one instance for the id, creating it if necessary.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoId get(int id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("negative id: " + id);
+		}
+
+		AtomicReferenceArray<PhotoId> segment = getSegment(id >>> SEGMENT_SHIFT);
+		int offset = id & SEGMENT_MASK;
+		PhotoId result = segment.get(offset);
+		if (result == null) {
+			PhotoId newId = new PhotoId(id);
+			if (segment.compareAndSet(offset, null, newId)) {
+				result = newId;
+			} else {
+				result = segment.get(offset);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Registers a predefined instance, e.g. PhotoId.NULL_ID; returns the instance that is in the table afterwards.
+	 *
+	 * @methodtype command
+	 */
+	public PhotoId putIfAbsent(PhotoId photoId) {
+		int id = photoId.asInt();
+		AtomicReferenceArray<PhotoId> segment = getSegment(id >>> SEGMENT_SHIFT);
+		int offset = id & SEGMENT_MASK;
+		if (segment.compareAndSet(offset, null, photoId)) {
+			return photoId;
+		}
+		return segment.get(offset);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected AtomicReferenceArray<PhotoId> getSegment(int segmentNo) {
+		AtomicReferenceArray<AtomicReferenceArray<PhotoId>> current = segments;
+		if (segmentNo < current.length()) {
+			AtomicReferenceArray<PhotoId> result = current.get(segmentNo);
+			if (result != null) {
+				return result;
+			}
+		}
+		return addSegment(segmentNo);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected synchronized AtomicReferenceArray<PhotoId> addSegment(int segmentNo) {
+		AtomicReferenceArray<AtomicReferenceArray<PhotoId>> current = segments;
+		if (segmentNo >= current.length()) {
+			int newLength = Math.max(segmentNo + 1, current.length() * 2);
+			AtomicReferenceArray<AtomicReferenceArray<PhotoId>> newSegments =
+					new AtomicReferenceArray<AtomicReferenceArray<PhotoId>>(newLength);
+			for (int i = 0; i < current.length(); i++) {
+				newSegments.set(i, current.get(i));
+			}
+			segments = current = newSegments;
+		}
+
+		AtomicReferenceArray<PhotoId> result = current.get(segmentNo);
+		if (result == null) {
+			result = new AtomicReferenceArray<PhotoId>(SEGMENT_SIZE);
+			current.set(segmentNo, result);
+		}
+		return result;
+	}
+
+}
@@ -23,22 +23,26 @@ package org.wahlzeit.model;
 import com.google.appengine.api.images.Image;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
+import org.wahlzeit.model.persistence.ImageKey;
 import org.wahlzeit.model.persistence.ImageStorage;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
 import org.wahlzeit.services.Persistent;
+import org.wahlzeit.services.WriteStatistics;
 import org.wahlzeit.utils.PatternInstance;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -64,15 +68,35 @@ public class PhotoManager extends ObjectManager {
 	protected static final Logger log = Logger.getLogger(PhotoManager.class.getName());
 
 	/**
-	 * In-memory cache for photos
+	 * Bounded in-memory cache for photos
 	 */
-	protected Map<PhotoId, Photo> photoCache = new HashMap<PhotoId, Photo>();
+	protected PhotoCache photoCache = new PhotoCache();
+
+	/**
+	 * Ids of all photos known to this manager, whether they are currently cached or not
+	 */
+	protected Set<PhotoId> knownPhotoIds = ConcurrentHashMap.newKeySet();
 
 	/**
 	 *
 	 */
 	protected PhotoTagCollector photoTagCollector = null;
 
+	/**
+	 * In-memory mirror of the Tag entities, used for filtering
+	 */
+	protected final TagIndex tagIndex = new TagIndex();
+
+	/**
+	 * Ids of all photos that can be displayed, maintained on add and on status changes
+	 */
+	protected final VisiblePhotoIds visiblePhotoIds = new VisiblePhotoIds();
+
+	/**
+	 * Locations of all known photos that have one, maintained on add and on location changes
+	 */
+	protected final LocationIndex locationIndex = new LocationIndex();
+
 	/**
 	 * @methodtype assertation
 	 */
@@ -154,7 +178,43 @@ public class PhotoManager extends ObjectManager {
 		if (result == null) {
 			result = photoFactory.loadPhoto(id);
 			if (result != null) {
-				doAddPhoto(result);
+				result.resetWriteCount(); // just loaded, nothing to write back
+				result = doAddPhotoIfAbsent(result);
+				indexTags(result);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the photos with the given ids; the photos that are not cached are loaded with one datastore read.
+	 *
+	 * @methodtype factory
+	 */
+	public Collection<Photo> getPhotos(Collection<PhotoId> ids) {
+		assertClassInvariants();
+
+		// preconditions
+		assertNotNull(ids);
+
+		List<Photo> result = new ArrayList<Photo>(ids.size());
+		List<PhotoId> uncachedIds = new ArrayList<PhotoId>();
+		for (PhotoId id : ids) {
+			Photo photo = doGetPhotoFromId(id);
+			if (photo != null) {
+				result.add(photo);
+			} else {
+				uncachedIds.add(id);
+			}
+		}
+
+		if (!uncachedIds.isEmpty()) {
+			for (Photo loaded : photoFactory.loadPhotos(uncachedIds)) {
+				loaded.resetWriteCount(); // just loaded, nothing to write back
+				Photo photo = doAddPhotoIfAbsent(loaded);
+				indexTags(photo);
+				result.add(photo);
 			}
 		}
 
@@ -179,6 +239,26 @@ public class PhotoManager extends ObjectManager {
 		assertClassInvariants();
 
 		photoCache.put(myPhoto.getId(), myPhoto);
+		knownPhotoIds.add(myPhoto.getId());
+		visiblePhotoIds.update(myPhoto);
+		locationIndex.setLocation(myPhoto.getId(), myPhoto.getLocation());
+	}
+
+	/**
+	 * Adds the photo unless another thread has cached the same photo in the meantime. Returns the cached photo.
+	 *
+	 * @methodtype command
+	 * @methodproperties primitive
+	 */
+	protected Photo doAddPhotoIfAbsent(Photo myPhoto) {
+		assertClassInvariants();
+
+		Photo result = photoCache.putIfAbsent(myPhoto.getId(), myPhoto);
+		knownPhotoIds.add(myPhoto.getId());
+		visiblePhotoIds.update(result);
+		locationIndex.setLocation(result.getId(), result.getLocation());
+
+		return result;
 	}
 
 	/**
@@ -204,7 +284,8 @@ public class PhotoManager extends ObjectManager {
 	/**
 	 * @methodtype command
 	 *
-	 * Load all persisted photos. Executed when Wahlzeit is restarted.
+	 * Load all persisted photos and rebuild the tag index. Executed when Wahlzeit is restarted. Only the photo metadata
+	 * is loaded, scaled images are read on demand by the StaticDataServlet through the ImageStorage and its cache.
 	 */
 	public void loadPhotos() {
 		assertClassInvariants();
@@ -214,6 +295,7 @@ public class PhotoManager extends ObjectManager {
 			public Collection<Photo> run() {
 				Collection<Photo> existingPhotos = new ArrayList<Photo>();
 				readObjects(existingPhotos, Photo.class);
+				migrateLegacyKeys(existingPhotos);
 				return existingPhotos;
 			}
 		});
@@ -222,11 +304,13 @@ public class PhotoManager extends ObjectManager {
 			if (!doHasPhoto(photo.getId())) {
 				log.config(LogBuilder.createSystemMessage().
 						addParameter("Load Photo with ID", photo.getIdAsString()).toString());
-				loadScaledImages(photo);
+				photo.resetWriteCount(); // just loaded, nothing to write back
 				doAddPhoto(photo);
+				indexTags(photo);
 			} else {
 				log.config(LogBuilder.createSystemMessage().
 						addParameter("Already loaded Photo", photo.getIdAsString()).toString());
+				photo.resetWriteCount(); // stale duplicate of the cached photo, must never be written
 			}
 		}
 
@@ -235,6 +319,35 @@ public class PhotoManager extends ObjectManager {
 		assertClassInvariants();
 	}
 
+	/**
+	 * Re-keys photos that were saved before their key mirrored the PhotoId. These were stored under an auto-allocated
+	 * key, so PhotoFactory.loadPhoto() could not reload them once evicted, and new ids could collide with their keys.
+	 * The photos are saved under their new keys before the old entities are deleted, so an interrupted migration
+	 * loses nothing and is completed with the next load.
+	 *
+	 * @methodtype command
+	 */
+	protected void migrateLegacyKeys(Collection<? extends Photo> photos) {
+		List<Photo> legacyPhotos = new ArrayList<Photo>();
+		List<com.googlecode.objectify.Key<Photo>> legacyKeys = new ArrayList<com.googlecode.objectify.Key<Photo>>();
+		for (Photo photo : photos) {
+			if (photo.hasLegacyKey()) {
+				legacyKeys.add(com.googlecode.objectify.Key.create(photo));
+				photo.updateKey();
+				legacyPhotos.add(photo);
+			}
+		}
+		if (legacyPhotos.isEmpty()) {
+			return;
+		}
+
+		log.info(LogBuilder.createSystemMessage().
+				addAction("migrate photos to keys mirroring their id").
+				addParameter("number of photos", legacyPhotos.size()).toString());
+		writeObjects(legacyPhotos);
+		OfyService.ofy().delete().keys(legacyKeys).now();
+	}
+
 	/**
 	 * @methodtype boolean-query
 	 * @methodproperty primitive
@@ -248,35 +361,27 @@ public class PhotoManager extends ObjectManager {
 	/**
 	 * @methodtype command
 	 *
-	 * Loads all scaled Images of this Photo from Google Cloud Storage
+	 * Loads all scaled Images of this Photo from Google Cloud Storage into the image cache of the ImageStorage. Not
+	 * needed for serving images, which are loaded on demand; only useful to warm the cache for a specific photo.
 	 */
 	protected void loadScaledImages(Photo photo) {
 		assertClassInvariants();
 
 		String photoIdAsString = photo.getId().asString();
-		ImageStorage imageStorage = ImageStorage.getInstance();
+		log.config(LogBuilder.createSystemMessage().
+				addAction("loading images").
+				addParameter("photo ID", photoIdAsString).toString());
 
-		for (PhotoSize photoSize : PhotoSize.values()) {
+		try {
+			// reading fills the image cache
+			Map<ImageKey, Serializable> images =
+					ImageStorage.getInstance().readImages(ImageKey.getAllSizes(photoIdAsString));
 			log.config(LogBuilder.createSystemMessage().
-					addAction("loading image").
-					addParameter("image size", photoSize.asString()).
-					addParameter("photo ID", photoIdAsString).toString());
-			if (imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-				try {
-					Serializable rawImage = imageStorage.readImage(photoIdAsString, photoSize.asInt());
-					if (rawImage != null && rawImage instanceof Image) {
-						photo.setImage(photoSize, (Image) rawImage);
-					}
-				} catch (IOException e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addParameter("size", photoSize.asString()).
-							addParameter("photo ID", photoIdAsString).
-							addException("Could not load image although it exists", e).toString());
-				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("Size does not exist", photoSize.asString()).toString());
-			}
+					addParameter("Number of sizes loaded", images.size()).toString());
+		} catch (IOException e) {
+			log.warning(LogBuilder.createSystemMessage().
+					addParameter("photo ID", photoIdAsString).
+					addException("Could not load images", e).toString());
 		}
 
 		assertClassInvariants();
@@ -293,6 +398,11 @@ public class PhotoManager extends ObjectManager {
 		assertClassInvariants();
 	}
 
+	@Override
+	protected long getEstimatedSize(Persistent obj) {
+		return (obj instanceof Photo) ? ((Photo) obj).getEstimatedSize() : super.getEstimatedSize(obj);
+	}
+
 	@Override
 	protected void updateDependents(Persistent obj) {
 		if (obj instanceof Photo) {
@@ -321,81 +431,140 @@ public class PhotoManager extends ObjectManager {
 	/**
 	 * @methodtype command
 	 *
-	 * Persists all available sizes of the Photo. If one size exceeds the limit of the persistence layer, e.g. > 1MB for
-	 * the Datastore, it is simply not persisted.
+	 * Persists all available sizes of the Photo that are waiting in the image cache. If one size exceeds the limit of
+	 * the persistence layer, e.g. > 1MB for the Datastore, it is simply not persisted.
 	 */
 	protected void saveScaledImages(Photo photo) {
+		saveScaledImages(Collections.singletonList(photo));
+	}
+
+	/**
+	 * @methodtype command
+	 *
+	 * Persists the waiting images of all given photos with one batch write.
+	 */
+	protected void saveScaledImages(Collection<? extends Photo> photos) {
 		assertClassInvariants();
 
-		String photoIdAsString = photo.getId().asString();
-		ImageStorage imageStorage = ImageStorage.getInstance();
-		PhotoSize photoSize;
-		int it = 0;
-		boolean moreSizesExist = true;
-		do{
-			photoSize = PhotoSize.values()[it];
-			it++;
-			Image image = photo.getImage(photoSize);
-			if (image != null) {
-				try {
-					if (!imageStorage.doesImageExist(photoIdAsString, photoSize.asInt())) {
-						imageStorage.writeImage(image, photoIdAsString, photoSize.asInt());
-					}
-				} catch (Exception e) {
-					log.warning(LogBuilder.createSystemMessage().
-							addException("Problem when storing image", e).toString());
-					moreSizesExist = false;
-				}
-			} else {
-				log.config(LogBuilder.createSystemMessage().
-						addParameter("No image for size", photoSize.asString()).toString());
-				moreSizesExist = false;
-			}
-		} while (it < PhotoSize.values().length && moreSizesExist);
+		List<ImageKey> keys = new ArrayList<ImageKey>();
+		for (Photo photo : photos) {
+			keys.addAll(ImageKey.getAllSizes(photo.getId().asString()));
+		}
+
+		try {
+			ImageStorage.getInstance().writeCachedImages(keys);
+		} catch (Exception e) {
+			log.warning(LogBuilder.createSystemMessage().
+					addException("Problem when storing images", e).toString());
+		}
 
 		assertClassInvariants();
 	}
 
 	/**
 	 * Removes all tags of the Photo (obj) in the datastore that have been removed by the user and adds all new tags of
-	 * the photo to the datastore.
+	 * the photo to the datastore. The tags that are already stored are taken from the tag index, so the datastore is
+	 * only accessed if the tags have changed.
 	 */
 	protected void updateTags(Photo photo) {
 		assertClassInvariants();
 
-		// delete all existing tags, for the case that some have been removed
-		deleteObjects(Tag.class, Tag.PHOTO_ID, photo.getId().asString());
-
-		// add all current tags to the datastore
+		PhotoId photoId = photo.getId();
 		Set<String> tags = new HashSet<String>();
 		photoTagCollector.collect(tags, photo);
-		for (Iterator<String> i = tags.iterator(); i.hasNext(); ) {
-			Tag tag = new Tag(i.next(), photo.getId().asString());
-			log.config(LogBuilder.createSystemMessage().addParameter("Writing Tag", tag.asString()).toString());
-			writeObject(tag);
+
+		Set<String> oldTags = tagIndex.getTags(photoId);
+		if (tags.equals(oldTags)) {
+			log.config(LogBuilder.createSystemMessage().
+					addParameter("Tags unchanged for photo", photoId.asString()).toString());
+			return;
+		}
+
+		Set<String> removedTags = new HashSet<String>(oldTags);
+		removedTags.removeAll(tags);
+		if (!removedTags.isEmpty()) {
+			List<Tag> existingTags = new ArrayList<Tag>();
+			readObjects(existingTags, Tag.class, Tag.PHOTO_ID, photoId.asString());
+			List<Tag> obsoleteTags = new ArrayList<Tag>();
+			for (Tag tag : existingTags) {
+				if (removedTags.contains(tag.getText())) {
+					obsoleteTags.add(tag);
+				}
+			}
+			deleteObjects(obsoleteTags);
+		}
+
+		List<Tag> newTags = new ArrayList<Tag>();
+		for (String text : tags) {
+			if (!oldTags.contains(text)) {
+				Tag tag = new Tag(text, photoId.asString());
+				log.config(LogBuilder.createSystemMessage().addParameter("Writing Tag", tag.asString()).toString());
+				newTags.add(tag);
+			}
 		}
+		writeObjects(newTags);
+
+		tagIndex.setTags(photoId, tags);
 
 		assertClassInvariants();
 	}
 
 	/**
+	 * Adds the current tags of the photo to the tag index only, used when loading photos. Photos that are indexed
+	 * already are left alone, their entry reflects the tags that are stored.
 	 *
+	 * @methodtype command
 	 */
-	public void savePhotos() throws IOException{
+	protected void indexTags(Photo photo) {
+		if (tagIndex.hasPhoto(photo.getId())) {
+			return;
+		}
+
+		Set<String> tags = new HashSet<String>();
+		photoTagCollector.collect(tags, photo);
+		tagIndex.setTags(photo.getId(), tags);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public TagIndex getTagIndex() {
+		return tagIndex;
+	}
+
+	/**
+	 *
+	 */
+	public WriteStatistics savePhotos() throws IOException{
 		assertClassInvariants();
 
-		updateObjects(photoCache.values());
+		Collection<Photo> photos = getDirtyObjects(Photo.class);
+		saveScaledImages(photos); // one batch for all photos, leaves nothing to do for updateDependents()
+		WriteStatistics result = writeObjects(photos);
+		photoCache.cleanUp();
 
 		assertClassInvariants();
+		return result;
 	}
 
 	/**
+	 * Returns a snapshot of the photos that are currently held in memory. Use getPhotoIds() to access all photos.
+	 *
 	 * @methodtype get
 	 */
 	public Map<PhotoId, Photo> getPhotoCache() {
 		assertClassInvariants();
 
-		return photoCache;
+		return photoCache.asMap();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public Set<PhotoId> getPhotoIds() {
+		assertClassInvariants();
+
+		return Collections.unmodifiableSet(knownPhotoIds);
 	}
 
 	/**
@@ -404,11 +573,15 @@ public class PhotoManager extends ObjectManager {
 	public Set<Photo> findPhotosByOwner(String ownerName) {
 		assertClassInvariants();
 
-		Set<Photo> result = new HashSet<Photo>();
-		readObjects(result, Photo.class, Photo.OWNER_ID, ownerName);
+		Set<Photo> loadedPhotos = new HashSet<Photo>();
+		readObjects(loadedPhotos, Photo.class, Photo.OWNER_ID, ownerName);
 
-		for (Iterator<Photo> i = result.iterator(); i.hasNext(); ) {
-			doAddPhoto(i.next());
+		// prefer cached instances, they may hold changes that have not been written yet
+		Set<Photo> result = new HashSet<Photo>();
+		for (Iterator<Photo> i = loadedPhotos.iterator(); i.hasNext(); ) {
+			Photo photo = i.next();
+			photo.resetWriteCount();
+			result.add(doAddPhotoIfAbsent(photo));
 		}
 
 		return result;
@@ -420,8 +593,63 @@ public class PhotoManager extends ObjectManager {
 	public Photo getVisiblePhoto(PhotoFilter filter) {
 		assertClassInvariants();
 
-		filter.generateDisplayablePhotoIds();
-		return getPhotoFromId(filter.getRandomDisplayablePhotoId());
+		return getPhotoFromId(filter.getRandomDisplayablePhotoId(visiblePhotoIds));
+	}
+
+	/**
+	 * Sets the status of the photo and updates the visible photo ids accordingly.
+	 *
+	 * @methodtype set
+	 */
+	public void setPhotoStatus(Photo photo, PhotoStatus status) {
+		photo.setStatus(status);
+		updateVisibility(photo);
+	}
+
+	/**
+	 * Called after the status of a photo has changed.
+	 *
+	 * @methodtype command
+	 */
+	public void updateVisibility(Photo photo) {
+		if (knownPhotoIds.contains(photo.getId())) {
+			visiblePhotoIds.update(photo);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public VisiblePhotoIds getVisiblePhotoIds() {
+		return visiblePhotoIds;
+	}
+
+	/**
+	 * Sets the location of the photo and updates the location index accordingly.
+	 *
+	 * @methodtype set
+	 */
+	public void setPhotoLocation(Photo photo, Location location) {
+		photo.setLocation(location);
+		updateLocation(photo);
+	}
+
+	/**
+	 * Called after the location of a photo has changed.
+	 *
+	 * @methodtype command
+	 */
+	public void updateLocation(Photo photo) {
+		if (photo.getId() != null && knownPhotoIds.contains(photo.getId())) {
+			locationIndex.setLocation(photo.getId(), photo.getLocation());
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public LocationIndex getLocationIndex() {
+		return locationIndex;
 	}
 
 	/**
@@ -449,16 +677,16 @@ public class PhotoManager extends ObjectManager {
 		assertIsNewPhoto(id);
 		doAddPhoto(photo);
 
-		GlobalsManager.getInstance().saveGlobals();
-
 		assertClassInvariants();
 	}
 
 	/**
+	 * Checks the known ids only, so adding a photo does not read the datastore; new ids are never used elsewhere.
+	 *
 	 * @methodtype assertion
 	 */
 	protected void assertIsNewPhoto(PhotoId id) {
-		if (hasPhoto(id)) {
+		if (knownPhotoIds.contains(id)) {
 			throw new IllegalStateException("Photo already exists!");
 		}
 	}
@@ -24,6 +24,7 @@ import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesService;
 import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.appengine.api.images.Transform;
+import org.wahlzeit.model.persistence.ImageStorage;
 import org.wahlzeit.services.LogBuilder;
 
 import java.util.logging.Logger;
@@ -88,8 +89,8 @@ public class PhotoUtil {
 	}
 
 	/**
-	 * @methodtype command Scale the source picture to the given size, store it in the datastore and reference it in the
-	 * photo.
+	 * @methodtype command Scale the source picture to the given size and put it into the image cache, from where it is
+	 * persisted when the photo is saved.
 	 */
 	protected static void scaleImage(Image source, PhotoSize size, Photo photo) throws Exception {
 		int sourceWidth = source.getWidth();
@@ -102,7 +103,7 @@ public class PhotoUtil {
 		Transform resize = ImagesServiceFactory.makeResize(targetWidth, targetHeight);
 		Image newImage = imagesService.applyTransform(resize, source);
 
-		photo.setImage(size, newImage);
+		ImageStorage.getInstance().cacheImage(newImage, photo.getId().asString(), size.asInt());
 
 		log.config(LogBuilder.createSystemMessage().addParameter("Scaled image to size", size.asString()).toString());
 	}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Counts the votes for one photo in memory. Votes are added without locking; the flusher takes the votes that have
+ * not been written yet with getPendingPraise() and confirms them with markFlushed() once they are stored.
+ */
+public class PraiseAccumulator {
+
+	/**
+	 * All votes added to this accumulator
+	 */
+	protected final LongAdder praiseSum = new LongAdder();
+	protected final LongAdder noVotes = new LongAdder();
+
+	/**
+	 * The part of the votes that has been written, only changed by the flusher
+	 */
+	protected volatile long flushedPraiseSum = 0;
+	protected volatile long flushedNoVotes = 0;
+
+	/**
+	 * Votes share the read lock, retiring takes the write lock; a retired accumulator takes no more votes
+	 */
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+	protected boolean isRetired = false;
+
+	/**
+	 * Returns false if the accumulator has been retired; the vote then has to be added to a new accumulator.
+	 *
+	 * @methodtype command
+	 */
+	public boolean addVote(int value) {
+		lock.readLock().lock();
+		try {
+			if (isRetired) {
+				return false;
+			}
+			// praise is added before the vote and read after it, so a snapshot never has a vote without its praise
+			praiseSum.add(value);
+			noVotes.increment();
+			return true;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Retires the accumulator if all its votes have been flushed and returns whether it is retired.
+	 *
+	 * @methodtype command
+	 */
+	public boolean retireIfFlushed() {
+		lock.writeLock().lock();
+		try {
+			PraiseCount pending = getPendingPraise();
+			if (pending.getNoVotes() == 0 && pending.getPraiseSum() == 0) {
+				isRetired = true;
+			}
+			return isRetired;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public PraiseCount getPraise() {
+		long votes = noVotes.sum();
+		return new PraiseCount(praiseSum.sum(), votes);
+	}
+
+	/**
+	 * Returns the votes that have not been flushed yet.
+	 *
+	 * @methodtype get
+	 */
+	public PraiseCount getPendingPraise() {
+		long votes = noVotes.sum() - flushedNoVotes;
+		long sum = praiseSum.sum() - flushedPraiseSum;
+		return new PraiseCount(sum, votes);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public synchronized void markFlushed(PraiseCount flushed) {
+		flushedPraiseSum += flushed.getPraiseSum();
+		flushedNoVotes += flushed.getNoVotes();
+	}
+
+}
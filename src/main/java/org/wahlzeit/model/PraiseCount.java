@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+/**
+ * An immutable pair of praise sum and number of votes.
+ */
+public class PraiseCount {
+
+	/**
+	 *
+	 */
+	public static final PraiseCount ZERO = new PraiseCount(0, 0);
+
+	/**
+	 *
+	 */
+	protected final long praiseSum;
+	protected final long noVotes;
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PraiseCount(long praiseSum, long noVotes) {
+		this.praiseSum = praiseSum;
+		this.noVotes = noVotes;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getPraiseSum() {
+		return praiseSum;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoVotes() {
+		return noVotes;
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public PraiseCount add(PraiseCount other) {
+		return new PraiseCount(praiseSum + other.praiseSum, noVotes + other.noVotes);
+	}
+
+	/**
+	 * @methodtype factory
+	 */
+	public PraiseCount addVote(int value) {
+		return new PraiseCount(praiseSum + value, noVotes + 1);
+	}
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.VoidWork;
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.ObjectManager;
+import org.wahlzeit.services.OfyService;
+import org.wahlzeit.services.SegmentedLruCache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Stores the praise of photos in PraiseCounterShards. Votes are first counted in a PraiseAccumulator per photo and
+ * later flushed in batches, each photo's pending votes to a randomly chosen shard in a transaction. So voting needs
+ * neither exclusive locks nor datastore writes, and concurrent flushes rarely contend for one entity. Accumulators
+ * are removed once all their votes are flushed.
+ *
+ * Votes are flushed by the FlushPraiseAgent, which the cron job calls every minute, and at shutdown; requests never
+ * flush. Pending votes live in memory only: votes of an instance that is shut down without running its shutdown
+ * hook, see ServiceMain, are lost. These are the votes since the instance's last flush, i.e. about a minute's worth
+ * while it receives the cron calls. As each cron call is served by one instance only, other instances keep their
+ * votes pending, and show them from memory, until a cron call reaches them or they shut down.
+ *
+ * The totals of all shards of a photo are read with one batch get by key, which is strongly consistent, and kept for
+ * the read TTL; votes flushed by this instance are added to them right away. Votes of other instances show up once
+ * the totals are read again. Reads take no lock: a read that overlaps a flush of the same photo is returned but not
+ * kept, as it may or may not contain the flushed votes. Only the totals of the most recently used photos are kept.
+ * The number of shards must not be decreased, shards beyond it would not be read.
+ */
+public class PraiseCounterManager extends ObjectManager {
+
+	private static final Logger log = Logger.getLogger(PraiseCounterManager.class.getName());
+
+	/**
+	 * Settings can be overridden by these system properties, see appengine-web.xml
+	 */
+	public static final String NO_SHARDS_PROPERTY = "wahlzeit.praise.noShards";
+	public static final String READ_TTL_PROPERTY = "wahlzeit.praise.readTtlMillis";
+	public static final String MAX_STORED_COUNTS_PROPERTY = "wahlzeit.praise.maxStoredCounts";
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_NO_SHARDS = 16;
+	public static final long DEFAULT_READ_TTL = 600000;
+	public static final int DEFAULT_MAX_STORED_COUNTS = 10000;
+
+	/**
+	 * Datastore limit for the number of entity groups in one transaction
+	 */
+	public static final int MAX_SHARDS_PER_TRANSACTION = 25;
+
+	/**
+	 *
+	 */
+	protected static final PraiseCounterManager instance = new PraiseCounterManager();
+
+	/**
+	 * @methodtype get
+	 */
+	public static PraiseCounterManager getInstance() {
+		return instance;
+	}
+
+	/**
+	 *
+	 */
+	protected final int noShards;
+	protected final long readTtl;
+
+	/**
+	 * Sum of all shards per photo, as last read plus the votes this instance has flushed since; entries of photos that
+	 * are being flushed are not evicted
+	 */
+	protected final SegmentedLruCache<PhotoId, StoredPraiseCount> storedPraiseCounts;
+
+	/**
+	 * Votes of this instance per photo; the flushed part is contained in the stored praise counts
+	 */
+	protected final ConcurrentMap<PhotoId, PraiseAccumulator> accumulators =
+			new ConcurrentHashMap<PhotoId, PraiseAccumulator>();
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PraiseCounterManager() {
+		this(Integer.getInteger(NO_SHARDS_PROPERTY, DEFAULT_NO_SHARDS),
+				Long.getLong(READ_TTL_PROPERTY, DEFAULT_READ_TTL));
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PraiseCounterManager(int noShards) {
+		this(noShards, DEFAULT_READ_TTL);
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PraiseCounterManager(int noShards, long readTtl) {
+		this(noShards, readTtl, Integer.getInteger(MAX_STORED_COUNTS_PROPERTY, DEFAULT_MAX_STORED_COUNTS));
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public PraiseCounterManager(int noShards, long readTtl, int maxStoredCounts) {
+		if (noShards <= 0) {
+			throw new IllegalArgumentException("noShards should be positive");
+		}
+		this.noShards = noShards;
+		this.readTtl = readTtl;
+		this.storedPraiseCounts = new SegmentedLruCache<PhotoId, StoredPraiseCount>(maxStoredCounts, maxStoredCounts) {
+			@Override
+			protected boolean isEvictable(StoredPraiseCount value) {
+				return !value.isFlushing();
+			}
+		};
+	}
+
+	/**
+	 * Returns the praise counted for the photo, without the praise stored in the photo itself.
+	 *
+	 * @methodtype get
+	 */
+	public PraiseCount getPraiseCount(PhotoId photoId) {
+		assertIsNonNullArgument(photoId, "photoId");
+
+		PraiseCount result = getStoredPraiseCount(photoId);
+		PraiseAccumulator accumulator = accumulators.get(photoId);
+		if (accumulator != null) {
+			result = result.add(accumulator.getPendingPraise());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the sum of all shards of the photo, read again if the last read is older than the read TTL. While one
+	 * thread reads a stale sum again, the others return the stale sum instead of waiting.
+	 *
+	 * @methodtype get
+	 */
+	protected PraiseCount getStoredPraiseCount(PhotoId photoId) {
+		StoredPraiseCount stored = getStoredPraiseCountEntry(photoId);
+		long now = System.currentTimeMillis();
+		long version = stored.beginRead(now - readTtl);
+		if (version < 0) {
+			return stored.getPraiseCount();
+		}
+
+		PraiseCount result = null;
+		try {
+			result = doReadPraiseCount(photoId);
+			return result;
+		} finally {
+			stored.endRead(result, now, version);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected StoredPraiseCount getStoredPraiseCountEntry(PhotoId photoId) {
+		StoredPraiseCount result = storedPraiseCounts.get(photoId);
+		if (result == null) {
+			result = storedPraiseCounts.putIfAbsent(photoId, new StoredPraiseCount());
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoStoredPraiseCounts() {
+		return storedPraiseCounts.size();
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void addPraise(PhotoId photoId, int value) {
+		assertIsNonNullArgument(photoId, "photoId");
+
+		while (true) {
+			PraiseAccumulator accumulator = accumulators.get(photoId);
+			if (accumulator == null) {
+				PraiseAccumulator newAccumulator = new PraiseAccumulator();
+				accumulator = accumulators.putIfAbsent(photoId, newAccumulator);
+				if (accumulator == null) {
+					accumulator = newAccumulator;
+				}
+			}
+			if (accumulator.addVote(value)) {
+				return;
+			}
+			// retired by a flush, replace it
+			accumulators.remove(photoId, accumulator);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoAccumulators() {
+		return accumulators.size();
+	}
+
+	/**
+	 * Returns the number of votes that have not been written to the datastore yet.
+	 *
+	 * @methodtype get
+	 */
+	public long getNoPendingVotes() {
+		long result = 0;
+		for (PraiseAccumulator accumulator : accumulators.values()) {
+			result += accumulator.getPendingPraise().getNoVotes();
+		}
+		return result;
+	}
+
+	/**
+	 * Writes all pending votes to the shards. Votes that could not be written stay pending. Synchronized, so that
+	 * flushes do not run concurrently; reads never wait for it.
+	 *
+	 * @methodtype command
+	 */
+	public synchronized void flush() {
+		Map<PhotoId, PraiseCount> pendingPraise = new LinkedHashMap<PhotoId, PraiseCount>();
+		for (Map.Entry<PhotoId, PraiseAccumulator> entry : accumulators.entrySet()) {
+			PraiseCount pending = entry.getValue().getPendingPraise();
+			if (pending.getNoVotes() != 0 || pending.getPraiseSum() != 0) {
+				pendingPraise.put(entry.getKey(), pending);
+			}
+		}
+		if (pendingPraise.isEmpty()) {
+			return;
+		}
+
+		long noFlushedVotes = 0;
+		List<PhotoId> photoIds = new ArrayList<PhotoId>(pendingPraise.keySet());
+		for (int from = 0; from < photoIds.size(); from += MAX_SHARDS_PER_TRANSACTION) {
+			Map<PhotoId, PraiseCount> batch = new LinkedHashMap<PhotoId, PraiseCount>();
+			for (PhotoId photoId : photoIds.subList(from, Math.min(from + MAX_SHARDS_PER_TRANSACTION, photoIds.size()))) {
+				batch.put(photoId, pendingPraise.get(photoId));
+			}
+
+			Map<PhotoId, StoredPraiseCount> storedCounts = new LinkedHashMap<PhotoId, StoredPraiseCount>();
+			for (PhotoId photoId : batch.keySet()) {
+				StoredPraiseCount stored = getStoredPraiseCountEntry(photoId);
+				stored.beginFlush();
+				storedCounts.put(photoId, stored);
+			}
+
+			try {
+				doAddToShards(batch);
+			} catch (RuntimeException ex) {
+				log.warning(LogBuilder.createSystemMessage().
+						addException("Could not write praise, keeping it pending", ex).toString());
+				for (StoredPraiseCount stored : storedCounts.values()) {
+					stored.endFlush(null);
+				}
+				continue;
+			}
+
+			for (Map.Entry<PhotoId, PraiseCount> entry : batch.entrySet()) {
+				// stored counts that have not been read yet will contain the votes when they are read
+				storedCounts.get(entry.getKey()).endFlush(entry.getValue());
+				PraiseAccumulator accumulator = accumulators.get(entry.getKey());
+				accumulator.markFlushed(entry.getValue());
+				if (accumulator.retireIfFlushed()) {
+					accumulators.remove(entry.getKey(), accumulator);
+				}
+				noFlushedVotes += entry.getValue().getNoVotes();
+			}
+		}
+
+		// entries that were kept during the flush may be evicted now
+		storedPraiseCounts.cleanUp();
+
+		log.info(LogBuilder.createSystemMessage().addAction("flush praise").
+				addParameter("flushed votes", noFlushedVotes).
+				addParameter("pending votes", getNoPendingVotes()).toString());
+	}
+
+	/**
+	 * Reads all shards of the photo with one batch get by key.
+	 *
+	 * @methodtype get
+	 * @methodproperty primitive
+	 */
+	protected PraiseCount doReadPraiseCount(PhotoId photoId) {
+		List<Key<PraiseCounterShard>> keys = new ArrayList<Key<PraiseCounterShard>>(noShards);
+		for (int shardNo = 0; shardNo < noShards; shardNo++) {
+			keys.add(Key.create(PraiseCounterShard.class, PraiseCounterShard.getShardId(photoId, shardNo)));
+		}
+		Map<Key<PraiseCounterShard>, PraiseCounterShard> shards = OfyService.ofy().load().keys(keys);
+
+		PraiseCount result = PraiseCount.ZERO;
+		for (PraiseCounterShard shard : shards.values()) {
+			result = result.add(shard.asPraiseCount());
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the praise of each photo to a random shard of the photo, all in one transaction.
+	 *
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doAddToShards(final Map<PhotoId, PraiseCount> praise) {
+		final Map<Key<PraiseCounterShard>, PhotoId> photoIds = new LinkedHashMap<Key<PraiseCounterShard>, PhotoId>();
+		final Map<Key<PraiseCounterShard>, Integer> shardNos = new LinkedHashMap<Key<PraiseCounterShard>, Integer>();
+		for (PhotoId photoId : praise.keySet()) {
+			int shardNo = ThreadLocalRandom.current().nextInt(noShards);
+			Key<PraiseCounterShard> key =
+					Key.create(PraiseCounterShard.class, PraiseCounterShard.getShardId(photoId, shardNo));
+			photoIds.put(key, photoId);
+			shardNos.put(key, shardNo);
+		}
+
+		OfyService.ofy().transact(new VoidWork() {
+			@Override
+			public void vrun() {
+				Map<Key<PraiseCounterShard>, PraiseCounterShard> shards = OfyService.ofy().load().keys(photoIds.keySet());
+
+				List<PraiseCounterShard> result = new ArrayList<PraiseCounterShard>();
+				for (Map.Entry<Key<PraiseCounterShard>, PhotoId> entry : photoIds.entrySet()) {
+					PraiseCounterShard shard = shards.get(entry.getKey());
+					if (shard == null) {
+						shard = new PraiseCounterShard(entry.getValue(), shardNos.get(entry.getKey()));
+					}
+					shard.addToPraise(praise.get(entry.getValue()));
+					result.add(shard);
+				}
+				OfyService.ofy().save().entities(result).now();
+			}
+		});
+	}
+
+	/**
+	 * The sum of all shards of a photo and when it was read. The version changes whenever a flush of the photo starts
+	 * or ends, so that a read knows whether it overlapped a flush.
+	 */
+	protected static class StoredPraiseCount {
+
+		protected PraiseCount praiseCount = null; // null until first read
+		protected long readTime = 0;
+		protected long version = 0;
+		protected int noFlushes = 0;
+		protected boolean isReading = false;
+
+		/**
+		 * @methodtype get
+		 */
+		protected synchronized PraiseCount getPraiseCount() {
+			return praiseCount;
+		}
+
+		/**
+		 * Returns the version to pass to endRead if the sum needs to be read, i.e. it has not been read yet or it was
+		 * read before staleTime and no other thread is reading it again; returns -1 otherwise.
+		 *
+		 * @methodtype command
+		 */
+		protected synchronized long beginRead(long staleTime) {
+			if (praiseCount != null && (readTime >= staleTime || isReading)) {
+				return -1;
+			}
+			isReading = true;
+			return version;
+		}
+
+		/**
+		 * Keeps the praise count read, unless the read failed (null) or overlapped a flush.
+		 *
+		 * @methodtype command
+		 */
+		protected synchronized void endRead(PraiseCount readCount, long readTime, long readVersion) {
+			isReading = false;
+			if (readCount != null && version == readVersion) {
+				praiseCount = readCount;
+				this.readTime = readTime;
+			}
+		}
+
+		/**
+		 * @methodtype command
+		 */
+		protected synchronized void beginFlush() {
+			noFlushes++;
+			version++;
+		}
+
+		/**
+		 * Adds the flushed praise to the sum, if it was written (not null) and the sum has been read.
+		 *
+		 * @methodtype command
+		 */
+		protected synchronized void endFlush(PraiseCount flushedPraise) {
+			noFlushes--;
+			version++;
+			if (flushedPraise != null && praiseCount != null) {
+				praiseCount = praiseCount.add(flushedPraise);
+			}
+		}
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		protected synchronized boolean isFlushing() {
+			return noFlushes > 0;
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * One of several counters that together hold the praise of a photo. Votes are spread over the shards, so concurrent
+ * votes for one photo rarely write the same entity. Shards are root entities, each in its own entity group.
+ */
+@Entity
+public class PraiseCounterShard {
+
+	@Id
+	private String id;
+	private String photoId;
+	private long praiseSum = 0;
+	private long noVotes = 0;
+
+	/**
+	 *
+	 */
+	public PraiseCounterShard() {
+		// do nothing, necessary for Google Datastore
+	}
+
+	/**
+	 *
+	 */
+	public PraiseCounterShard(PhotoId photoId, int shardNo) {
+		this.id = getShardId(photoId, shardNo);
+		this.photoId = photoId.asString();
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public static String getShardId(PhotoId photoId, int shardNo) {
+		return photoId.asString() + "-" + shardNo;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void addToPraise(PraiseCount praise) {
+		praiseSum += praise.getPraiseSum();
+		noVotes += praise.getNoVotes();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getPhotoId() {
+		return photoId;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public PraiseCount asPraiseCount() {
+		return new PraiseCount(praiseSum, noVotes);
+	}
+
+}
@@ -36,6 +36,9 @@ public class SphericCoordinate extends AbstractCoordinate {
     private final double theta;
     private final double radius;
 
+    // the cached Cartesian representation, computed once on first use; racy but benign, as all are equal
+    private volatile CartesianCoordinate cartesianCoordinate = null;
+
     /**
      * Checks whether object is in a valid state.
      *
@@ -122,13 +125,18 @@ public class SphericCoordinate extends AbstractCoordinate {
     public CartesianCoordinate asCartesianCoordinate() {
         assertClassInvariants();
 
+        CartesianCoordinate cached = cartesianCoordinate;
+        if (cached != null)
+            return cached;
+
         // calculate x, y and z values from own values
         double x = radius * Math.sin(theta) * Math.cos(phi);
         double y = radius * Math.sin(theta) * Math.sin(phi);
         double z = radius * Math.cos(theta);
 
-        // use these values to construct a new CartesianCoordinate
-        CartesianCoordinate result = new CartesianCoordinate(x, y ,z);
+        // use these values to get the cached CartesianCoordinate
+        CartesianCoordinate result = CoordinateService.getCartesianCoordinate(x, y, z);
+        cartesianCoordinate = result;
 
         assertClassInvariants();
 
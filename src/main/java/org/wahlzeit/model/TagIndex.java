@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index from tag text (as collected by the PhotoTagCollector, e.g. "un:..." and "tg:...") to the
+ * ids of the photos carrying that tag. Mirrors the Tag entities in the datastore, so filtering needs no queries.
+ */
+public class TagIndex {
+
+	/**
+	 *
+	 */
+	protected final Map<String, PhotoIdSet> photoIdsByTag = new HashMap<String, PhotoIdSet>();
+	protected final Map<PhotoId, Set<String>> tagsByPhotoId = new HashMap<PhotoId, Set<String>>();
+
+	/**
+	 *
+	 */
+	protected final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Replaces the tags of the photo and returns the tags it had before.
+	 *
+	 * @methodtype command
+	 */
+	public Set<String> setTags(PhotoId photoId, Set<String> tags) {
+		Set<String> newTags = new HashSet<String>(tags);
+
+		lock.writeLock().lock();
+		try {
+			Set<String> oldTags = tagsByPhotoId.put(photoId, newTags);
+			if (oldTags == null) {
+				oldTags = Collections.emptySet();
+			}
+
+			for (String tag : oldTags) {
+				if (!newTags.contains(tag)) {
+					doRemove(tag, photoId);
+				}
+			}
+			for (String tag : newTags) {
+				if (!oldTags.contains(tag)) {
+					doAdd(tag, photoId);
+				}
+			}
+
+			return oldTags;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void removePhoto(PhotoId photoId) {
+		lock.writeLock().lock();
+		try {
+			Set<String> oldTags = tagsByPhotoId.remove(photoId);
+			if (oldTags != null) {
+				for (String tag : oldTags) {
+					doRemove(tag, photoId);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			photoIdsByTag.clear();
+			tagsByPhotoId.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasPhoto(PhotoId photoId) {
+		lock.readLock().lock();
+		try {
+			return tagsByPhotoId.containsKey(photoId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the tags of the photo, an empty set if the photo is not indexed.
+	 *
+	 * @methodtype get
+	 */
+	public Set<String> getTags(PhotoId photoId) {
+		lock.readLock().lock();
+		try {
+			Set<String> tags = tagsByPhotoId.get(photoId);
+			return (tags != null) ? new HashSet<String>(tags) : new HashSet<String>();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a copy of the ids of all photos with the given tag.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoIdSet getPhotoIds(String tag) {
+		return getPhotoIdsForAny(Collections.singleton(tag));
+	}
+
+	/**
+	 * Returns the ids of all photos that carry at least one of the given tags.
+	 *
+	 * @methodtype get
+	 */
+	public PhotoIdSet getPhotoIdsForAny(Collection<String> tags) {
+		PhotoIdSet result = new PhotoIdSet();
+
+		lock.readLock().lock();
+		try {
+			for (String tag : tags) {
+				PhotoIdSet photoIds = photoIdsByTag.get(tag);
+				if (photoIds != null) {
+					result.addAll(photoIds);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoTags() {
+		lock.readLock().lock();
+		try {
+			return photoIdsByTag.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doAdd(String tag, PhotoId photoId) {
+		PhotoIdSet photoIds = photoIdsByTag.get(tag);
+		if (photoIds == null) {
+			photoIds = new PhotoIdSet();
+			photoIdsByTag.put(tag, photoIds);
+		}
+		photoIds.add(photoId);
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doRemove(String tag, PhotoId photoId) {
+		PhotoIdSet photoIds = photoIdsByTag.get(tag);
+		if (photoIds != null) {
+			photoIds.remove(photoId);
+			if (photoIds.isEmpty()) {
+				photoIdsByTag.remove(tag);
+			}
+		}
+	}
+
+}
@@ -31,6 +31,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 
@@ -58,6 +60,11 @@ public class UserManager extends ClientManager {
 	 */
 	protected static UserManager instance;
 
+	/**
+	 * Maps the interned email addresses of all known users to the users
+	 */
+	protected final ConcurrentMap<EmailAddress, User> emailAddressUserMap = new ConcurrentHashMap<EmailAddress, User>();
+
 	/**
 	 *
 	 */
@@ -90,7 +97,12 @@ public class UserManager extends ClientManager {
 
 				for (User user : existingUser) {
 					if (!hasClientById(user.getId())) {
-						doAddClient(user);
+						try {
+							doAddClient(user);
+						} catch (IllegalArgumentException ex) {
+							log.warning(LogBuilder.createSystemMessage().
+									addException("skip user with used nickname", ex).toString());
+						}
 					} else {
 						log.config(LogBuilder.createSystemMessage().addParameter("user has been loaded", user.getId())
 								.toString());
@@ -139,21 +151,76 @@ public class UserManager extends ClientManager {
 	 *
 	 */
 	public User getUserByEmailAddress(EmailAddress emailAddress) {
-		User result;
+		EmailAddress key = asIndexKey(emailAddress);
+		User result = (key != null) ? emailAddressUserMap.get(key) : null;
+		if (result != null) {
+			return result;
+		}
+
+		// users created on another instance are not known here yet
 		result = readObject(User.class, User.EMAIL_ADDRESS, emailAddress.asString());
 
 		if (result != null) {
-			User current = getUserById(result.getId());
-			if (current == null) {
-				doAddClient(result);
-			} else {
-				result = current;
-			}
+			result = (User) doAddClient(result);
 		}
 
 		return result;
 	}
 
+	/**
+	 * Sets the email address of the client and keeps the email address index up to date.
+	 *
+	 * @methodtype set
+	 */
+	public void setEmailAddress(Client client, EmailAddress emailAddress) {
+		assertIsNonNullArgument(client);
+
+		boolean isIndexed = (client instanceof User) && getClientById(client.getId()) == client;
+		if (isIndexed) {
+			removeFromIndexes(client);
+		}
+		client.setEmailAddress(emailAddress);
+		if (isIndexed) {
+			addToIndexes(client);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	@Override
+	protected void addToIndexes(Client client) {
+		EmailAddress key = asIndexKey(client.getEmailAddress());
+		if (client instanceof User && key != null) {
+			emailAddressUserMap.put(key, (User) client);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	@Override
+	protected void removeFromIndexes(Client client) {
+		EmailAddress key = asIndexKey(client.getEmailAddress());
+		if (key != null) {
+			emailAddressUserMap.remove(key, client);
+		}
+	}
+
+	/**
+	 * Email addresses loaded from the datastore are not interned, so the index uses the interned instance.
+	 *
+	 * @methodtype conversion
+	 */
+	protected EmailAddress asIndexKey(EmailAddress emailAddress) {
+		if (emailAddress == null || emailAddress.asString() == null || emailAddress.asString().isEmpty()) {
+			return null;
+		}
+		return EmailAddress.getFromString(emailAddress.asString());
+	}
+
 	/**
 	 * @methodtype get
 	 */
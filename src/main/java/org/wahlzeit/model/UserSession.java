@@ -21,6 +21,7 @@
 package org.wahlzeit.model;
 
 import org.wahlzeit.services.Language;
+import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.Session;
 import org.wahlzeit.utils.HtmlUtil;
 
@@ -144,23 +145,52 @@ public class UserSession extends Session implements Serializable {
 	}
 
 	/**
+	 * Returns the client of this session. Ephemeral guests are not written to the datastore, so after a restart the
+	 * session may refer to a client that no longer exists; the session then gets a new guest.
+	 *
 	 * @methodtype get
 	 */
 	public Client getClient() {
-		String clientName = (String) httpSession.getAttribute(CLIENT_ID);
-		return UserManager.getInstance().getClientById(clientName);
+		Client result = lookUpClient();
+		if (result == null) {
+			String clientId = (String) httpSession.getAttribute(CLIENT_ID);
+			log.config(LogBuilder.createSystemMessage().
+					addAction("replace unknown client of session by new guest").
+					addParameter("client ID", clientId).toString());
+			result = new Guest();
+			setClient(result);
+		}
+		return result;
+	}
+
+	/**
+	 * A guest gets a new id when it is persisted, so the client is also looked up by the session it is mapped to.
+	 *
+	 * @methodtype get
+	 */
+	protected Client lookUpClient() {
+		String clientId = (String) httpSession.getAttribute(CLIENT_ID);
+		if (clientId == null) {
+			return null;
+		}
+
+		Client result = UserManager.getInstance().getClientById(clientId);
+		if (result == null) {
+			result = UserManager.getInstance().getClientByHttpSessionId(httpSession.getId());
+			if (result != null) {
+				httpSession.setAttribute(CLIENT_ID, result.getId());
+			}
+		}
+		return result;
 	}
 
 	/**
 	 * @methodtype set
 	 */
 	public void setClient(Client newClient) {
-		String previousClientId = (String) httpSession.getAttribute(CLIENT_ID);
-		if (previousClientId != null) {
-			Client previousClient = UserManager.getInstance().getClientById(previousClientId);
-			if (previousClient instanceof Guest) {
-				UserManager.getInstance().deleteClient(previousClient);
-			}
+		Client previousClient = lookUpClient();
+		if (previousClient instanceof Guest) {
+			UserManager.getInstance().deleteClient(previousClient);
 		}
 
 		httpSession.setAttribute(CLIENT_ID, newClient.getId());
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The ids of all photos that can currently be displayed, kept in a dense array so that a uniformly random id can be
+ * picked in constant time. Adding and removing are constant time as well: a removed id is replaced by the last one.
+ *
+ * Photo ids are small consecutive numbers, so the position of each id in the array is kept in an array indexed by id.
+ */
+public class VisiblePhotoIds {
+
+	/**
+	 *
+	 */
+	protected int[] ids = new int[64];
+	protected int size = 0;
+
+	/**
+	 * position + 1 of each id in ids, 0 if the id is not contained
+	 */
+	protected int[] positions = new int[64];
+
+	/**
+	 * Returns true if the id was not contained before.
+	 *
+	 * @methodtype command
+	 */
+	public synchronized boolean add(PhotoId id) {
+		int value = id.asInt();
+		if (contains(value)) {
+			return false;
+		}
+
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		if (value >= positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(value + 1, positions.length * 2));
+		}
+
+		ids[size] = value;
+		size++;
+		positions[value] = size;
+		return true;
+	}
+
+	/**
+	 * Returns true if the id was contained before.
+	 *
+	 * @methodtype command
+	 */
+	public synchronized boolean remove(PhotoId id) {
+		int value = id.asInt();
+		if (!contains(value)) {
+			return false;
+		}
+
+		int position = positions[value] - 1;
+		int last = ids[size - 1];
+		ids[position] = last;
+		positions[last] = position + 1;
+
+		positions[value] = 0;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Adds or removes the id, depending on whether the photo is visible.
+	 *
+	 * @methodtype command
+	 */
+	public void update(Photo photo) {
+		if (photo.isVisible()) {
+			add(photo.getId());
+		} else {
+			remove(photo.getId());
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public synchronized boolean contains(PhotoId id) {
+		return id != null && contains(id.asInt());
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected boolean contains(int value) {
+		return value >= 0 && value < positions.length && positions[value] != 0;
+	}
+
+	/**
+	 * Returns a uniformly chosen id, or PhotoId.NULL_ID if there are none.
+	 *
+	 * @methodtype get
+	 */
+	public synchronized PhotoId getRandomId(Random random) {
+		if (size == 0) {
+			return PhotoId.NULL_ID;
+		}
+		return PhotoId.getIdFromInt(ids[random.nextInt(size)]);
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public synchronized PhotoIdSet asPhotoIdSet() {
+		PhotoIdSet result = new PhotoIdSet();
+		for (int i = 0; i < size; i++) {
+			result.add(ids[i]);
+		}
+		return result;
+	}
+
+}
@@ -22,6 +22,7 @@ package org.wahlzeit.model.persistence;
 
 import com.google.appengine.api.images.Image;
 import com.google.appengine.api.images.ImagesServiceFactory;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Work;
 import com.googlecode.objectify.annotation.Entity;
@@ -33,6 +34,11 @@ import org.wahlzeit.utils.PatternInstance;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -50,6 +56,12 @@ public class DatastoreAdapter extends ImageStorage {
 
 	private static final Logger log = Logger.getLogger(DatastoreAdapter.class.getName());
 
+	/**
+	 * Limits of a single batch, see https://cloud.google.com/datastore/docs/concepts/limits
+	 */
+	public static final int MAX_BATCH_ENTITIES = 500;
+	public static final int MAX_BATCH_BYTES = 9 * 1024 * 1024; // leaves headroom below the 10 MB request limit
+
 
 	@Override
 	protected void doWriteImage(Serializable image, String photoIdAsString, int size)
@@ -74,6 +86,69 @@ public class DatastoreAdapter extends ImageStorage {
 		}
 	}
 
+	/**
+	 * Saves the images with as few batched puts as the datastore limits allow.
+	 */
+	@Override
+	protected Collection<ImageKey> doWriteImages(Map<ImageKey, ? extends Serializable> images)
+			throws IOException, InvalidParameterException {
+		Collection<ImageKey> result = new ArrayList<ImageKey>();
+		final List<ImageWrapper> batch = new ArrayList<ImageWrapper>();
+		int batchBytes = 0;
+
+		for (Map.Entry<ImageKey, ? extends Serializable> entry : images.entrySet()) {
+			ImageKey key = entry.getKey();
+			if (!(entry.getValue() instanceof Image)) {
+				log.warning(LogBuilder.createSystemMessage().
+						addMessage("did not get an Image type to store").
+						addParameter("image type", entry.getValue().toString()).toString());
+				continue;
+			}
+
+			ImageWrapper imageWrapper = new ImageWrapper(key.getPhotoIdAsString() + key.getSize());
+			try {
+				imageWrapper.setImage((Image) entry.getValue());
+			} catch (ArrayIndexOutOfBoundsException e) {
+				log.warning(LogBuilder.createSystemMessage().
+						addParameter("image", key).
+						addException("image too large for the datastore", e).toString());
+				continue;
+			}
+
+			int imageBytes = imageWrapper.getImageSize();
+			if (!batch.isEmpty() && (batch.size() >= MAX_BATCH_ENTITIES || batchBytes + imageBytes > MAX_BATCH_BYTES)) {
+				saveImageWrappers(batch);
+				batch.clear();
+				batchBytes = 0;
+			}
+
+			batch.add(imageWrapper);
+			batchBytes += imageBytes;
+			result.add(key);
+		}
+
+		if (!batch.isEmpty()) {
+			saveImageWrappers(batch);
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addParameter("images successfully written", result.size()).toString());
+		return result;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void saveImageWrappers(final List<ImageWrapper> imageWrappers) {
+		ObjectifyService.run(new Work<Boolean>() {
+			@Override
+			public Boolean run() {
+				OfyService.ofy().save().entities(imageWrappers).now();
+				return null;
+			}
+		});
+	}
+
 	@Override
 	protected Image doReadImage(final String photoIdAsString, final int size) throws IOException {
 		Image result = null;
@@ -98,24 +173,69 @@ public class DatastoreAdapter extends ImageStorage {
 		return result;
 	}
 
+	/**
+	 * Loads the images with batched gets.
+	 */
 	@Override
-	protected boolean doDoesImageExist(String photoIdAsString, int size) {
-		Image image = null;
-		boolean result = false;
-		try {
-			image = doReadImage(photoIdAsString, size);
-		} catch (IOException e) {
-			log.warning(
-					LogBuilder.createSystemMessage().addException("IOException when checking for Image existance", e)
-							.toString());
-		}
-		if (image != null) {
-			result = true;
+	protected Map<ImageKey, Serializable> doReadImages(Collection<ImageKey> keys) throws IOException {
+		Map<ImageKey, Serializable> result = new LinkedHashMap<ImageKey, Serializable>();
+		List<ImageKey> keyList = new ArrayList<ImageKey>(keys);
+
+		for (int from = 0; from < keyList.size(); from += MAX_BATCH_ENTITIES) {
+			List<ImageKey> batch = keyList.subList(from, Math.min(from + MAX_BATCH_ENTITIES, keyList.size()));
+			final List<String> ids = new ArrayList<String>(batch.size());
+			for (ImageKey key : batch) {
+				ids.add(key.getPhotoIdAsString() + key.getSize());
+			}
+
+			Map<String, ImageWrapper> imageWrappers = ObjectifyService.run(new Work<Map<String, ImageWrapper>>() {
+				@Override
+				public Map<String, ImageWrapper> run() {
+					return OfyService.ofy().load().type(ImageWrapper.class).ids(ids);
+				}
+			});
+
+			for (int i = 0; i < batch.size(); i++) {
+				ImageWrapper imageWrapper = imageWrappers.get(ids.get(i));
+				if (imageWrapper != null) {
+					result.put(batch.get(i), imageWrapper.getImage());
+				}
+			}
 		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addParameter("images successfully read", result.size()).toString());
+		return result;
+	}
+
+	/**
+	 * Uses a keys-only query, so the image data is not transferred.
+	 */
+	@Override
+	protected boolean doDoesImageExist(final String photoIdAsString, final int size) {
+		Key<ImageWrapper> imageKey = ObjectifyService.run(new Work<Key<ImageWrapper>>() {
+			@Override
+			public Key<ImageWrapper> run() {
+				return OfyService.ofy().load().type(ImageWrapper.class).
+						filterKey("=", Key.create(ImageWrapper.class, photoIdAsString + size)).keys().first().now();
+			}
+		});
+
+		boolean result = imageKey != null;
 		log.config(LogBuilder.createSystemMessage().addParameter("does image exist", result).toString());
 		return result;
 	}
 
+	@Override
+	protected byte[] asImageData(Serializable image) {
+		return (image instanceof Image) ? ((Image) image).getImageData() : null;
+	}
+
+	@Override
+	protected Image asImage(byte[] imageData) {
+		return ImagesServiceFactory.makeImage(imageData);
+	}
+
 	/**
 	 * Wrapper class to store {@link Image}s in the Google Datastore with Objectify.
 	 * 
@@ -147,6 +267,13 @@ public class DatastoreAdapter extends ImageStorage {
 			return ImagesServiceFactory.makeImage(imageData);
 		}
 
+		/**
+		 * @methodtype get
+		 */
+		public int getImageSize() {
+			return (imageData != null) ? imageData.length : 0;
+		}
+
 		/**
 		 * @methodtype set
 		 *
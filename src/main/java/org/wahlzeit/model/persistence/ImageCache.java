@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.SegmentedLruCache;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * Cache for the raw bytes of scaled images, keyed by photo id and size.
+ *
+ * Image data is kept in direct ByteBuffers outside of the Java heap and the cache is bounded by the total number of
+ * bytes. Images that have not been written to the storage yet are never evicted.
+ */
+public class ImageCache extends SegmentedLruCache<String, ImageCache.Entry> {
+
+	private static final Logger log = Logger.getLogger(ImageCache.class.getName());
+
+	/**
+	 * Limits can be overridden by these system properties, see appengine-web.xml
+	 */
+	public static final String MAX_ENTRIES_PROPERTY = "wahlzeit.imageCache.maxEntries";
+	public static final String MAX_BYTES_PROPERTY = "wahlzeit.imageCache.maxBytes";
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 50000;
+	public static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+
+	/**
+	 * @methodtype constructor
+	 */
+	public ImageCache() {
+		this(Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES),
+				Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public ImageCache(int maxEntries, long maxBytes) {
+		super(maxEntries, maxBytes);
+	}
+
+	/**
+	 * Returns a copy of the cached image data, or null if the image is not cached.
+	 *
+	 * @methodtype get
+	 */
+	public byte[] getImageData(String photoIdAsString, int size) {
+		Entry entry = get(asKey(photoIdAsString, size));
+		return (entry != null) ? entry.getData() : null;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean hasImage(String photoIdAsString, int size) {
+		return containsKey(asKey(photoIdAsString, size));
+	}
+
+	/**
+	 * Returns a copy of the image data if the image is cached but not persisted yet, null otherwise. Unlike
+	 * getImageData(), this does not count as an access to the image.
+	 *
+	 * @methodtype get
+	 */
+	public byte[] getPendingImageData(String photoIdAsString, int size) {
+		Entry entry = peek(asKey(photoIdAsString, size));
+		return (entry != null && !entry.isPersisted()) ? entry.getData() : null;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean isPersisted(String photoIdAsString, int size) {
+		Entry entry = peek(asKey(photoIdAsString, size));
+		return entry != null && entry.isPersisted();
+	}
+
+	/**
+	 * Copies the image data into the cache. Images that are not persisted yet stay in the cache until they are marked
+	 * as persisted.
+	 *
+	 * @methodtype command
+	 */
+	public void putImageData(String photoIdAsString, int size, byte[] data, boolean isPersisted) {
+		put(asKey(photoIdAsString, size), new Entry(data, isPersisted));
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void markPersisted(String photoIdAsString, int size) {
+		Entry entry = peek(asKey(photoIdAsString, size));
+		if (entry != null) {
+			entry.setPersisted();
+			cleanUp();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void removeImage(String photoIdAsString, int size) {
+		remove(asKey(photoIdAsString, size));
+	}
+
+	@Override
+	protected long weigh(Entry entry) {
+		return entry.getSize();
+	}
+
+	@Override
+	protected boolean isEvictable(Entry entry) {
+		return entry.isPersisted();
+	}
+
+	@Override
+	protected void onEviction(String key, Entry entry) {
+		log.config(LogBuilder.createSystemMessage().
+				addAction("evict image from cache").
+				addParameter("image", key).toString());
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	protected static String asKey(String photoIdAsString, int size) {
+		return photoIdAsString + "/" + size;
+	}
+
+	/**
+	 * Image data held in a direct buffer; the buffer is never modified after creation.
+	 */
+	public static class Entry {
+
+		private final ByteBuffer buffer;
+		private volatile boolean isPersisted;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected Entry(byte[] data, boolean isPersisted) {
+			buffer = ByteBuffer.allocateDirect(data.length);
+			buffer.put(data);
+			buffer.flip();
+			this.isPersisted = isPersisted;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public byte[] getData() {
+			byte[] result = new byte[buffer.limit()];
+			buffer.duplicate().get(result);
+			return result;
+		}
+
+		/**
+		 * @methodtype get
+		 */
+		public int getSize() {
+			return buffer.capacity();
+		}
+
+		/**
+		 * @methodtype boolean-query
+		 */
+		public boolean isPersisted() {
+			return isPersisted;
+		}
+
+		/**
+		 * @methodtype set
+		 */
+		protected void setPersisted() {
+			isPersisted = true;
+		}
+	}
+
+}
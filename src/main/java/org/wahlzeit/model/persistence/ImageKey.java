@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.model.persistence;
+
+import org.wahlzeit.model.PhotoSize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Identifies one scaled image in the ImageStorage, used by the batch methods.
+ */
+public class ImageKey {
+
+	/**
+	 *
+	 */
+	protected final String photoIdAsString;
+	protected final int size;
+
+	/**
+	 * @methodtype constructor
+	 */
+	public ImageKey(String photoIdAsString, int size) {
+		if (photoIdAsString == null || "".equals(photoIdAsString)) {
+			throw new IllegalArgumentException("Invalid photoId:" + photoIdAsString);
+		}
+		PhotoSize.assertIsValidPhotoSizeAsInt(size);
+
+		this.photoIdAsString = photoIdAsString;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the keys of all sizes of the given photo.
+	 *
+	 * @methodtype factory
+	 */
+	public static List<ImageKey> getAllSizes(String photoIdAsString) {
+		List<ImageKey> result = new ArrayList<ImageKey>();
+		for (PhotoSize photoSize : PhotoSize.values()) {
+			result.add(new ImageKey(photoIdAsString, photoSize.asInt()));
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public String getPhotoIdAsString() {
+		return photoIdAsString;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ImageKey)) {
+			return false;
+		}
+		ImageKey other = (ImageKey) obj;
+		return size == other.size && photoIdAsString.equals(other.photoIdAsString);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * photoIdAsString.hashCode() + size;
+	}
+
+	@Override
+	public String toString() {
+		return photoIdAsString + "/" + size;
+	}
+
+}
@@ -7,10 +7,20 @@ import org.wahlzeit.utils.PatternInstance;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 /**
  * Abstract super class that offers a convenient interface for all kinds of storage types to store images.
+ *
+ * Reads and writes go through an ImageCache, so image data does not have to be held by the photos themselves.
  * 
  * @review
  */
@@ -25,6 +35,17 @@ public abstract class ImageStorage {
 	private static final Logger log = Logger.getLogger(ImageStorage.class.getName());
 	private static ImageStorage instance = null;
 
+	/**
+	 *
+	 */
+	protected final ImageCache imageCache = new ImageCache();
+
+	/**
+	 * Sizes known to exist in the storage, as a bitmap (bit n = PhotoSize n) per photo id. Only positive results are
+	 * recorded, as other instances may write images this instance does not know about.
+	 */
+	protected final ConcurrentMap<String, Integer> existingSizes = new ConcurrentHashMap<String, Integer>();
+
 	/**
 	 * @methodtype get
 	 */
@@ -71,6 +92,120 @@ public abstract class ImageStorage {
 				addParameter("size", size).toString());
 
 		doWriteImage(image, photoIdAsString, size);
+		markImageExists(photoIdAsString, size);
+
+		byte[] imageData = asImageData(image);
+		if (imageData != null) {
+			imageCache.putImageData(photoIdAsString, size, imageData, true);
+		}
+	}
+
+	/**
+	 * Puts the image into the cache only, e.g. right after it has been scaled. It is kept in the cache until it is
+	 * written to the storage via writeCachedImage().
+	 *
+	 * @methodtype command
+	 */
+	public void cacheImage(Serializable image, String photoIdAsString, int size)
+			throws InvalidParameterException {
+
+		assertImageNotNull(image);
+		assertValidPhotoId(photoIdAsString);
+		PhotoSize.assertIsValidPhotoSizeAsInt(size);
+
+		byte[] imageData = asImageData(image);
+		if (imageData == null) {
+			throw new InvalidParameterException("Image type can not be cached: " + image);
+		}
+
+		imageCache.putImageData(photoIdAsString, size, imageData, false);
+	}
+
+	/**
+	 * Writes all given images to the storage in one batch.
+	 *
+	 * @methodtype command
+	 * @methodproperty wrapper
+	 */
+	public void writeImages(Map<ImageKey, ? extends Serializable> images)
+			throws InvalidParameterException, IOException {
+
+		for (Serializable image : images.values()) {
+			assertImageNotNull(image);
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addAction("write images to storage").
+				addParameter("number of images", images.size()).toString());
+
+		for (ImageKey key : doWriteImages(images)) {
+			markImageExists(key.getPhotoIdAsString(), key.getSize());
+			byte[] imageData = asImageData(images.get(key));
+			if (imageData != null) {
+				imageCache.putImageData(key.getPhotoIdAsString(), key.getSize(), imageData, true);
+			}
+		}
+	}
+
+	/**
+	 * Writes a cached image to the storage unless that has already been done. Returns false if there is no such image
+	 * in the cache.
+	 *
+	 * @methodtype command
+	 * @methodproperty convenience
+	 */
+	public boolean writeCachedImage(String photoIdAsString, int size)
+			throws InvalidParameterException, IOException {
+
+		return writeCachedImages(Collections.singletonList(new ImageKey(photoIdAsString, size))) > 0;
+	}
+
+	/**
+	 * Writes all given images that are waiting in the cache to the storage in one batch and returns the number of
+	 * given images that are in the cache. Only images the storage has written are marked as persisted; images that
+	 * failed or were rejected (e.g. because they are too large) stay pinned in the cache and are written again with
+	 * the next call, so their bytes are never evicted unsaved.
+	 *
+	 * @methodtype command
+	 */
+	public int writeCachedImages(Collection<ImageKey> keys)
+			throws InvalidParameterException, IOException {
+
+		int result = 0;
+		Map<ImageKey, Serializable> pendingImages = new LinkedHashMap<ImageKey, Serializable>();
+		for (ImageKey key : keys) {
+			if (imageCache.hasImage(key.getPhotoIdAsString(), key.getSize())) {
+				result++;
+				// only images that still have to be written are copied, and looking at them does not promote them
+				byte[] imageData = imageCache.getPendingImageData(key.getPhotoIdAsString(), key.getSize());
+				if (imageData != null) {
+					pendingImages.put(key, asImage(imageData));
+				}
+			}
+		}
+
+		if (pendingImages.isEmpty()) {
+			return result;
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addAction("write cached images to storage").
+				addParameter("number of images", pendingImages.size()).toString());
+
+		Collection<ImageKey> writtenKeys = doWriteImages(pendingImages);
+		for (ImageKey key : writtenKeys) {
+			imageCache.markPersisted(key.getPhotoIdAsString(), key.getSize());
+			markImageExists(key.getPhotoIdAsString(), key.getSize());
+		}
+
+		int noUnwrittenImages = pendingImages.size() - writtenKeys.size();
+		if (noUnwrittenImages > 0) {
+			log.warning(LogBuilder.createSystemMessage().
+					addAction("keep unwritten images in cache").
+					addParameter("number of images", noUnwrittenImages).toString());
+		}
+
+		return result;
 	}
 
 	/**
@@ -82,6 +217,31 @@ public abstract class ImageStorage {
 	protected abstract void doWriteImage(Serializable image, String photoIdAsString, int size)
 			throws IOException, InvalidParameterException;
 
+	/**
+	 * Actually writes the images to the storage and returns the keys of the images that have been written; images
+	 * the storage can not hold are skipped. Storages that support batch operations should override this.
+	 *
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected Collection<ImageKey> doWriteImages(Map<ImageKey, ? extends Serializable> images)
+			throws IOException, InvalidParameterException {
+
+		Collection<ImageKey> result = new ArrayList<ImageKey>();
+		for (Map.Entry<ImageKey, ? extends Serializable> entry : images.entrySet()) {
+			ImageKey key = entry.getKey();
+			try {
+				doWriteImage(entry.getValue(), key.getPhotoIdAsString(), key.getSize());
+				result.add(key);
+			} catch (RuntimeException e) {
+				log.warning(LogBuilder.createSystemMessage().
+						addParameter("image", key).
+						addException("Storage rejected image", e).toString());
+			}
+		}
+		return result;
+	}
+
 
 	// read methods ----------------------------------------------------------------------------------------------------
 
@@ -102,7 +262,60 @@ public abstract class ImageStorage {
 				addParameter("photo id", photoIdAsString).
 				addParameter("size", size).toString());
 
-		return doReadImage(photoIdAsString, size);
+		byte[] imageData = imageCache.getImageData(photoIdAsString, size);
+		if (imageData != null) {
+			return asImage(imageData);
+		}
+
+		Serializable result = doReadImage(photoIdAsString, size);
+		if (result != null) {
+			markImageExists(photoIdAsString, size);
+			imageData = asImageData(result);
+			if (imageData != null) {
+				imageCache.putImageData(photoIdAsString, size, imageData, true);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads all given images, from the cache if possible and from the storage in one batch otherwise. Images that are
+	 * not found are not contained in the result.
+	 *
+	 * @methodtype get
+	 */
+	public Map<ImageKey, Serializable> readImages(Collection<ImageKey> keys)
+			throws IllegalArgumentException, IOException {
+
+		Map<ImageKey, Serializable> result = new LinkedHashMap<ImageKey, Serializable>();
+		List<ImageKey> missingKeys = new ArrayList<ImageKey>();
+		for (ImageKey key : keys) {
+			byte[] imageData = imageCache.getImageData(key.getPhotoIdAsString(), key.getSize());
+			if (imageData != null) {
+				result.put(key, asImage(imageData));
+			} else {
+				missingKeys.add(key);
+			}
+		}
+
+		if (missingKeys.isEmpty()) {
+			return result;
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addAction("read images from storage").
+				addParameter("number of images", missingKeys.size()).toString());
+
+		for (Map.Entry<ImageKey, Serializable> entry : doReadImages(missingKeys).entrySet()) {
+			ImageKey key = entry.getKey();
+			markImageExists(key.getPhotoIdAsString(), key.getSize());
+			byte[] imageData = asImageData(entry.getValue());
+			if (imageData != null) {
+				imageCache.putImageData(key.getPhotoIdAsString(), key.getSize(), imageData, true);
+			}
+			result.put(key, entry.getValue());
+		}
+		return result;
 	}
 
 	/**
@@ -114,6 +327,26 @@ public abstract class ImageStorage {
 	protected abstract Serializable doReadImage(String filename, int size)
 			throws IOException;
 
+	/**
+	 * Actually reads the specified images from the storage, images that are not found are left out. Storages that
+	 * support batch operations should override this.
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected Map<ImageKey, Serializable> doReadImages(Collection<ImageKey> keys)
+			throws IOException {
+
+		Map<ImageKey, Serializable> result = new LinkedHashMap<ImageKey, Serializable>();
+		for (ImageKey key : keys) {
+			Serializable image = doReadImage(key.getPhotoIdAsString(), key.getSize());
+			if (image != null) {
+				result.put(key, image);
+			}
+		}
+		return result;
+	}
+
 
 	// exist method ----------------------------------------------------------------------------------------------------
 
@@ -134,12 +367,35 @@ public abstract class ImageStorage {
 				addParameter("photo id", photoIdAsString).
 				addParameter("size", size).toString());
 
-		return doDoesImageExist(photoIdAsString, size);
+		if (isKnownToExist(photoIdAsString, size) || imageCache.hasImage(photoIdAsString, size)) {
+			return true;
+		}
+
+		boolean result = doDoesImageExist(photoIdAsString, size);
+		if (result) {
+			markImageExists(photoIdAsString, size);
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype boolean query
+	 */
+	protected boolean isKnownToExist(String photoIdAsString, int size) {
+		Integer sizes = existingSizes.get(photoIdAsString);
+		return sizes != null && (sizes & (1 << size)) != 0;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void markImageExists(String photoIdAsString, int size) {
+		existingSizes.merge(photoIdAsString, 1 << size, (sizes, newSize) -> sizes | newSize);
 	}
 
 
 	/**
-	 * Actually checks if the specified image already exists in the storage
+	 * Actually checks if the specified image already exists in the storage. Should not transfer the image itself.
 	 *
 	 * @methodtype boolean query
 	 * @methodproperty hook
@@ -147,6 +403,25 @@ public abstract class ImageStorage {
 	protected abstract boolean doDoesImageExist(String photoIdAsString, int size);
 
 
+	// conversion methods ----------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns the raw bytes of the image, or null if the image type is not supported by this storage.
+	 *
+	 * @methodtype conversion
+	 * @methodproperty hook
+	 */
+	protected abstract byte[] asImageData(Serializable image);
+
+	/**
+	 * Creates an image from raw bytes, inverse of asImageData().
+	 *
+	 * @methodtype conversion
+	 * @methodproperty hook
+	 */
+	protected abstract Serializable asImage(byte[] imageData);
+
+
 	// assertion methods -----------------------------------------------------------------------------------------------
 
 	/**
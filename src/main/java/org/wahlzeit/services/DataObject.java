@@ -49,14 +49,19 @@ public abstract class DataObject implements Persistent, Serializable {
 	 *
 	 */
 	public final void resetWriteCount() {
-		writeCount = 0;
+		if (writeCount != 0) {
+			writeCount = 0;
+			DirtyObjectTracker.getInstance().markClean(this);
+		}
 	}
 
 	/**
 	 *
 	 */
 	public final void incWriteCount() {
-		writeCount++;
+		if (writeCount++ == 0) {
+			DirtyObjectTracker.getInstance().markDirty(this);
+		}
 	}
 
 	/**
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the set of dirty Persistent objects per class, so that saving needs to look at changed objects only.
+ * Objects register themselves when their write count becomes non-zero and unregister when it is reset.
+ *
+ * The objects are held weakly: a dirty object nobody refers to anymore could not be saved anyway.
+ */
+public class DirtyObjectTracker {
+
+	/**
+	 *
+	 */
+	protected static final DirtyObjectTracker instance = new DirtyObjectTracker();
+
+	/**
+	 * @methodtype get
+	 */
+	public static DirtyObjectTracker getInstance() {
+		return instance;
+	}
+
+	/**
+	 *
+	 */
+	protected final ConcurrentMap<Class<?>, Set<Persistent>> dirtyObjectsByClass =
+			new ConcurrentHashMap<Class<?>, Set<Persistent>>();
+
+	/**
+	 * @methodtype command
+	 */
+	public void markDirty(Persistent object) {
+		Set<Persistent> dirtyObjects = dirtyObjectsByClass.get(object.getClass());
+		if (dirtyObjects == null) {
+			Set<Persistent> newDirtyObjects = Collections.synchronizedSet(
+					Collections.newSetFromMap(new WeakHashMap<Persistent, Boolean>()));
+			dirtyObjects = dirtyObjectsByClass.putIfAbsent(object.getClass(), newDirtyObjects);
+			if (dirtyObjects == null) {
+				dirtyObjects = newDirtyObjects;
+			}
+		}
+		dirtyObjects.add(object);
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void markClean(Object object) {
+		Set<Persistent> dirtyObjects = dirtyObjectsByClass.get(object.getClass());
+		if (dirtyObjects != null) {
+			dirtyObjects.remove(object);
+		}
+	}
+
+	/**
+	 * Returns the dirty objects of the given type, including those of its subclasses.
+	 *
+	 * @methodtype get
+	 */
+	public <E extends Persistent> List<E> getDirtyObjects(Class<E> type) {
+		List<E> result = new ArrayList<E>();
+		for (Map.Entry<Class<?>, Set<Persistent>> entry : dirtyObjectsByClass.entrySet()) {
+			if (type.isAssignableFrom(entry.getKey())) {
+				Set<Persistent> dirtyObjects = entry.getValue();
+				synchronized (dirtyObjects) {
+					for (Persistent object : dirtyObjects) {
+						if (object.isDirty()) {
+							result.add(type.cast(object));
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoDirtyObjects() {
+		int result = 0;
+		for (Set<Persistent> dirtyObjects : dirtyObjectsByClass.values()) {
+			result += dirtyObjects.size();
+		}
+		return result;
+	}
+
+}
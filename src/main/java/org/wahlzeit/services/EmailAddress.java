@@ -23,8 +23,8 @@ package org.wahlzeit.services;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * An email address provides a simple email address representation.
@@ -35,7 +35,7 @@ public class EmailAddress implements Serializable {
 	/**
 	 *
 	 */
-	protected static final Map<String, EmailAddress> instances = new HashMap<String, EmailAddress>();
+	protected static final ConcurrentMap<String, EmailAddress> instances = new ConcurrentHashMap<String, EmailAddress>();
 
 	/**
 	 *
@@ -70,12 +70,10 @@ public class EmailAddress implements Serializable {
 	protected static EmailAddress doGetFromString(String myValue) {
 		EmailAddress result = instances.get(myValue);
 		if (result == null) {
-			synchronized (instances) {
-				result = instances.get(myValue);
-				if (result == null) {
-					result = new EmailAddress(myValue);
-					instances.put(myValue, result);
-				}
+			EmailAddress newEmailAddress = new EmailAddress(myValue);
+			result = instances.putIfAbsent(myValue, newEmailAddress);
+			if (result == null) {
+				result = newEmailAddress;
 			}
 		}
 
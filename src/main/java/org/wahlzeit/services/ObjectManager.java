@@ -23,6 +23,7 @@ package org.wahlzeit.services;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.logging.Logger;
@@ -40,6 +41,11 @@ public abstract class ObjectManager {
 
 	private static final Logger log = Logger.getLogger(ObjectManager.class.getName());
 
+	/**
+	 * Rough size of an entity, used for objects without a better estimate
+	 */
+	protected static final long DEFAULT_ESTIMATED_OBJECT_SIZE = 512;
+
 
 	/**
 	 * Reads the first Entity with the given key in the Datastore
@@ -130,9 +136,7 @@ public abstract class ObjectManager {
 	 * Updates all entities of the given collection in the datastore.
 	 */
 	protected void updateObjects(Collection<? extends Persistent> collection) {
-		for (Persistent object : collection) {
-			updateObject(object);
-		}
+		writeObjects(collection);
 	}
 
 	/**
@@ -143,11 +147,25 @@ public abstract class ObjectManager {
 	}
 
 	/**
-	 * Writes the given entity to the datastore.
+	 * Writes the given entity to the datastore. In write-behind mode, the entity is only queued and saved with the
+	 * next flush of the WriteBehindBuffer.
 	 */
 	protected void writeObject(Persistent object) {
 		assertIsNonNullArgument(object, "object");
 
+		if (object.isDirty() && WriteBehindBuffer.isEnabled()) {
+			WriteBehindBuffer.getInstance().add(this, object);
+		} else {
+			writeObjectNow(object);
+		}
+	}
+
+	/**
+	 * Writes the given entity to the datastore right away.
+	 */
+	protected void writeObjectNow(Persistent object) {
+		assertIsNonNullArgument(object, "object");
+
 		if (object.isDirty()) {
 			log.info(LogBuilder.createSystemMessage().
 					addParameter("Datastore: Write object of type", object).toString());
@@ -160,6 +178,58 @@ public abstract class ObjectManager {
 		}
 	}
 
+	/**
+	 * Returns all dirty objects of the given type, as registered with the DirtyObjectTracker, e.g.
+	 * writeObjects(getDirtyObjects(Photo.class)) to save all changed photos.
+	 */
+	protected <E extends Persistent> List<E> getDirtyObjects(Class<E> type) {
+		assertIsNonNullArgument(type, "type");
+
+		return DirtyObjectTracker.getInstance().getDirtyObjects(type);
+	}
+
+	/**
+	 * Writes all dirty entities of the given collection to the datastore with batched saves.
+	 */
+	protected WriteStatistics writeObjects(Collection<? extends Persistent> objects) {
+		assertIsNonNullArgument(objects, "objects");
+
+		WriteStatistics result = new WriteStatistics();
+		List<Persistent> dirtyObjects = new ArrayList<Persistent>();
+		for (Persistent object : objects) {
+			if (object.isDirty()) {
+				dirtyObjects.add(object);
+				result.addObject(getEstimatedSize(object));
+			}
+		}
+		if (dirtyObjects.isEmpty()) {
+			return result;
+		}
+
+		log.info(LogBuilder.createSystemMessage().
+				addParameter("Datastore: Write number of objects", dirtyObjects.size()).toString());
+		for (int from = 0; from < dirtyObjects.size(); from += WriteBehindBuffer.MAX_BATCH_SIZE) {
+			List<Persistent> batch = dirtyObjects.subList(from,
+					Math.min(from + WriteBehindBuffer.MAX_BATCH_SIZE, dirtyObjects.size()));
+			OfyService.ofy().save().entities(batch).now();
+			for (Persistent object : batch) {
+				WriteBehindBuffer.getInstance().remove(object);
+				updateDependents(object);
+				object.resetWriteCount();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the estimated number of bytes the object takes in the datastore.
+	 */
+	protected long getEstimatedSize(Persistent object) {
+		// overwrite if your objects have a better estimate
+		return DEFAULT_ESTIMATED_OBJECT_SIZE;
+	}
+
 	/**
 	 * Updates all dependencies of the object.
 	 */
@@ -174,9 +244,29 @@ public abstract class ObjectManager {
 		assertIsNonNullArgument(object, "object");
 
 		log.config(LogBuilder.createSystemMessage().addParameter("Datastore: delete entity", object).toString());
+		WriteBehindBuffer.getInstance().remove(object);
+		DirtyObjectTracker.getInstance().markClean(object);
 		OfyService.ofy().delete().entity(object).now();
 	}
 
+	/**
+	 * Deletes all given entities from the datastore with one batched delete.
+	 */
+	protected void deleteObjects(Collection<?> objects) {
+		assertIsNonNullArgument(objects, "objects");
+		if (objects.isEmpty()) {
+			return;
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addParameter("Datastore: delete number of entities", objects.size()).toString());
+		for (Object object : objects) {
+			WriteBehindBuffer.getInstance().remove(object);
+			DirtyObjectTracker.getInstance().markClean(object);
+		}
+		OfyService.ofy().delete().entities(objects).now();
+	}
+
 	/**
 	 * Deletes all entities of the type that have a property with the specified value, e.g.
 	 * deleteObjects(PhotoCase.class, "wasDecided", true) to delete all cases that have been decided.
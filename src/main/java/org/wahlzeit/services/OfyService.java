@@ -10,6 +10,7 @@ import org.wahlzeit.model.Guest;
 import org.wahlzeit.model.Moderator;
 import org.wahlzeit.model.Photo;
 import org.wahlzeit.model.PhotoCase;
+import org.wahlzeit.model.PraiseCounterShard;
 import org.wahlzeit.model.Tag;
 import org.wahlzeit.model.User;
 import org.wahlzeit.model.persistence.DatastoreAdapter.ImageWrapper;
@@ -34,6 +35,7 @@ public class OfyService {
 		factory().register(Client.class);
 		factory().register(Guest.class);
 		factory().register(PhotoCase.class);
+		factory().register(PraiseCounterShard.class);
 		factory().register(ImageWrapper.class);
 	}
 
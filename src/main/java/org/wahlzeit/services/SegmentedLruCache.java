@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe cache that is bounded by a number of entries and by a total weight (e.g. bytes).
+ *
+ * Eviction follows a segmented LRU policy: new entries enter the probation segment, entries that are hit again are
+ * promoted to the protected segment. Victims are taken from the least recently used end of the probation segment
+ * first, so entries that were only touched once do not push out frequently used ones.
+ *
+ * Lookups never block: they go to a concurrent map and only record the access if the eviction lock is free. Subclasses
+ * decide how much an entry weighs and whether it may be evicted at all.
+ */
+public class SegmentedLruCache<K, V> {
+
+	/**
+	 * Share of the entry budget that may be used by the protected segment
+	 */
+	public static final double PROTECTED_SHARE = 0.8;
+
+	/**
+	 *
+	 */
+	protected final int maxEntries;
+	protected final long maxWeight;
+	protected final int maxProtectedEntries;
+
+	/**
+	 * Lookup structure, safe to read without holding the eviction lock
+	 */
+	protected final Map<K, Node<K, V>> nodes = new ConcurrentHashMap<K, Node<K, V>>();
+
+	/**
+	 * Recency order of both segments, eldest first; guarded by evictionLock
+	 */
+	protected final LinkedHashMap<K, Node<K, V>> probation = new LinkedHashMap<K, Node<K, V>>();
+	protected final LinkedHashMap<K, Node<K, V>> protectedSegment = new LinkedHashMap<K, Node<K, V>>();
+
+	/**
+	 *
+	 */
+	protected final ReentrantLock evictionLock = new ReentrantLock();
+
+	/**
+	 * guarded by evictionLock
+	 */
+	protected long weightedSize = 0;
+
+	/**
+	 * @methodtype constructor
+	 */
+	public SegmentedLruCache(int maxEntries, long maxWeight) {
+		if (maxEntries <= 0 || maxWeight <= 0) {
+			throw new IllegalArgumentException("cache limits must be positive");
+		}
+
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.maxProtectedEntries = Math.max(1, (int) (maxEntries * PROTECTED_SHARE));
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public V get(K key) {
+		Node<K, V> node = nodes.get(key);
+		if (node == null) {
+			return null;
+		}
+
+		// recency is best effort; under contention the access is simply not recorded
+		if (evictionLock.tryLock()) {
+			try {
+				doRecordAccess(node);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+
+		return node.value;
+	}
+
+	/**
+	 * Returns the value without recording an access, so looking at it does not protect it from eviction.
+	 *
+	 * @methodtype get
+	 */
+	public V peek(K key) {
+		Node<K, V> node = nodes.get(key);
+		return (node != null) ? node.value : null;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public boolean containsKey(K key) {
+		return nodes.containsKey(key);
+	}
+
+	/**
+	 * Adds or replaces the value for the given key and returns the previous value, if any.
+	 *
+	 * @methodtype command
+	 */
+	public V put(K key, V value) {
+		assertIsNonNull(key);
+		assertIsNonNull(value);
+
+		evictionLock.lock();
+		try {
+			Node<K, V> old = doRemove(key);
+			doInsert(key, value);
+			evict();
+			return (old != null) ? old.value : null;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the value only if there is no value for the given key yet. Returns the value that is cached afterwards.
+	 *
+	 * @methodtype command
+	 */
+	public V putIfAbsent(K key, V value) {
+		assertIsNonNull(key);
+		assertIsNonNull(value);
+
+		evictionLock.lock();
+		try {
+			Node<K, V> existing = nodes.get(key);
+			if (existing != null) {
+				doRecordAccess(existing);
+				return existing.value;
+			}
+
+			doInsert(key, value);
+			evict();
+			return value;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public V remove(K key) {
+		evictionLock.lock();
+		try {
+			Node<K, V> old = doRemove(key);
+			return (old != null) ? old.value : null;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Re-evaluates the budgets, e.g. after entries that could not be evicted before became evictable.
+	 *
+	 * @methodtype command
+	 */
+	public void cleanUp() {
+		evictionLock.lock();
+		try {
+			evict();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getWeightedSize() {
+		evictionLock.lock();
+		try {
+			return weightedSize;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Returns a read-only view of the keys that are currently cached.
+	 *
+	 * @methodtype get
+	 */
+	public Set<K> keySet() {
+		return Collections.unmodifiableSet(nodes.keySet());
+	}
+
+	/**
+	 * Returns a snapshot of all entries that are currently cached.
+	 *
+	 * @methodtype conversion
+	 */
+	public Map<K, V> asMap() {
+		Map<K, V> result = new HashMap<K, V>();
+		for (Node<K, V> node : nodes.values()) {
+			result.put(node.key, node.value);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the weight of a value, e.g. its approximate size in bytes.
+	 *
+	 * @methodtype get
+	 * @methodproperty hook
+	 */
+	protected long weigh(V value) {
+		return 1;
+	}
+
+	/**
+	 * Values that are not evictable (e.g. unsaved changes) are skipped when looking for a victim.
+	 *
+	 * @methodtype boolean-query
+	 * @methodproperty hook
+	 */
+	protected boolean isEvictable(V value) {
+		return true;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty hook
+	 */
+	protected void onEviction(K key, V value) {
+		// do nothing
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doInsert(K key, V value) {
+		Node<K, V> node = new Node<K, V>(key, value, weigh(value));
+		nodes.put(key, node);
+		probation.put(key, node);
+		weightedSize += node.weight;
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected Node<K, V> doRemove(K key) {
+		Node<K, V> node = nodes.remove(key);
+		if (node != null) {
+			if (node.isProtected) {
+				protectedSegment.remove(key);
+			} else {
+				probation.remove(key);
+			}
+			weightedSize -= node.weight;
+		}
+		return node;
+	}
+
+	/**
+	 * Moves the node to the most recently used end of the protected segment; demotes protected entries if that
+	 * segment grows beyond its share.
+	 *
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected void doRecordAccess(Node<K, V> node) {
+		if (nodes.get(node.key) != node) {
+			return; // removed or replaced concurrently
+		}
+
+		if (node.isProtected) {
+			protectedSegment.remove(node.key);
+			protectedSegment.put(node.key, node);
+			return;
+		}
+
+		probation.remove(node.key);
+		node.isProtected = true;
+		protectedSegment.put(node.key, node);
+
+		while (protectedSegment.size() > maxProtectedEntries) {
+			Iterator<Node<K, V>> eldest = protectedSegment.values().iterator();
+			Node<K, V> demoted = eldest.next();
+			eldest.remove();
+			demoted.isProtected = false;
+			probation.put(demoted.key, demoted);
+		}
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected void evict() {
+		while (nodes.size() > maxEntries || weightedSize > maxWeight) {
+			Node<K, V> victim = findVictim(probation);
+			if (victim == null) {
+				victim = findVictim(protectedSegment);
+			}
+			if (victim == null) {
+				return; // nothing evictable right now, stay above budget until entries become evictable
+			}
+
+			doRemove(victim.key);
+			onEviction(victim.key, victim.value);
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected Node<K, V> findVictim(LinkedHashMap<K, Node<K, V>> segment) {
+		for (Node<K, V> node : segment.values()) {
+			if (isEvictable(node.value)) {
+				return node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @methodtype assertion
+	 */
+	protected void assertIsNonNull(Object o) {
+		if (o == null) {
+			throw new IllegalArgumentException("cache keys and values must not be null");
+		}
+	}
+
+	/**
+	 * A cache entry, remembers its weight as computed on insertion.
+	 */
+	protected static class Node<K, V> {
+
+		protected final K key;
+		protected final V value;
+		protected final long weight;
+		protected boolean isProtected = false; // guarded by evictionLock
+
+		protected Node(K key, V value, long weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+}
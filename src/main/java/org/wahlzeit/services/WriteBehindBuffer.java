@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Result;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Collects dirty Persistent objects written through an ObjectManager instead of saving each one with its own RPC.
+ * Repeated writes of the same entity are coalesced into one. The buffer is flushed with batched asynchronous saves
+ * once it holds too many objects or its oldest object waited too long, and synchronously by flush(), which is called
+ * at the end of each request and at shutdown.
+ *
+ * Objects stay dirty until their save has completed: flush() waits for all pending saves, no matter which thread
+ * started them, and marks the objects clean only if the save succeeded. Objects of a failed save are queued again.
+ */
+public class WriteBehindBuffer {
+
+	private static final Logger log = Logger.getLogger(WriteBehindBuffer.class.getName());
+
+	/**
+	 * Settings can be overridden by these system properties, see appengine-web.xml
+	 */
+	public static final String ENABLED_PROPERTY = "wahlzeit.writeBehind.enabled";
+	public static final String MAX_ENTRIES_PROPERTY = "wahlzeit.writeBehind.maxEntries";
+	public static final String MAX_DELAY_PROPERTY = "wahlzeit.writeBehind.maxDelayMillis";
+
+	/**
+	 *
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 500;
+	public static final long DEFAULT_MAX_DELAY = 2000;
+
+	/**
+	 * Datastore limit for the number of entities in one batch
+	 */
+	public static final int MAX_BATCH_SIZE = 500;
+
+	/**
+	 *
+	 */
+	protected static final WriteBehindBuffer instance = new WriteBehindBuffer();
+
+	/**
+	 * @methodtype get
+	 */
+	public static WriteBehindBuffer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	public static boolean isEnabled() {
+		return Boolean.getBoolean(ENABLED_PROPERTY);
+	}
+
+	/**
+	 * Pending writes in insertion order, keyed by the entity key or, for objects without id, by the object itself
+	 */
+	protected final Map<Object, Entry> entries = new LinkedHashMap<Object, Entry>();
+
+	/**
+	 *
+	 */
+	protected final int maxEntries;
+	protected final long maxDelay;
+	protected long oldestEntryTime = 0;
+
+	/**
+	 * Saves that were started asynchronously and have not been waited for, guarded by itself
+	 */
+	protected final List<PendingSave> pendingSaves = new ArrayList<PendingSave>();
+
+	/**
+	 * @methodtype constructor
+	 */
+	public WriteBehindBuffer() {
+		this(Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES),
+				Long.getLong(MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY));
+	}
+
+	/**
+	 * @methodtype constructor
+	 */
+	public WriteBehindBuffer(int maxEntries, long maxDelay) {
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries should be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Queues the object for writing; the manager's dependents are updated when the object is saved.
+	 *
+	 * @methodtype command
+	 */
+	public void add(ObjectManager manager, Persistent object) {
+		List<Entry> batch = null;
+
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			if (entries.isEmpty()) {
+				oldestEntryTime = now;
+			}
+			entries.put(asBufferKey(object), new Entry(manager, object));
+
+			if (entries.size() >= maxEntries || now - oldestEntryTime >= maxDelay) {
+				batch = removeEntries();
+			}
+		}
+
+		if (batch != null) {
+			log.config(LogBuilder.createSystemMessage().
+					addAction("flush write-behind buffer asynchronously").
+					addParameter("number of objects", batch.size()).toString());
+			save(batch);
+		}
+	}
+
+	/**
+	 * Drops a queued write, e.g. because the object is deleted.
+	 *
+	 * @methodtype command
+	 */
+	public synchronized void remove(Object object) {
+		entries.remove(asBufferKey(object));
+	}
+
+	/**
+	 * Saves all queued objects and waits for all pending saves. Objects that are written while the dependents are
+	 * updated are saved as well; objects of failed saves stay queued for the next flush.
+	 *
+	 * @methodtype command
+	 */
+	public void flush() {
+		// objects of failed asynchronous saves are queued again and retried once below
+		awaitPendingSaves();
+
+		boolean succeeded = true;
+		for (List<Entry> batch = removeAllEntries(); succeeded && !batch.isEmpty(); batch = removeAllEntries()) {
+			log.config(LogBuilder.createSystemMessage().
+					addAction("flush write-behind buffer").
+					addParameter("number of objects", batch.size()).toString());
+			succeeded = save(batch) & awaitPendingSaves();
+		}
+	}
+
+	/**
+	 * Waits for all pending saves; their objects are marked clean if the save succeeded and queued again otherwise.
+	 * Returns false if a save failed.
+	 *
+	 * @methodtype command
+	 */
+	public boolean awaitPendingSaves() {
+		boolean result = true;
+		List<PendingSave> saves;
+		synchronized (pendingSaves) {
+			saves = new ArrayList<PendingSave>(pendingSaves);
+			pendingSaves.clear();
+		}
+
+		for (PendingSave save : saves) {
+			try {
+				save.result.now();
+			} catch (RuntimeException ex) {
+				log.warning(LogBuilder.createSystemMessage().
+						addException("write-behind save failed, queue objects again", ex).toString());
+				requeue(save.entries);
+				result = false;
+				continue;
+			}
+			markSaved(save.entries);
+		}
+
+		return result;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoPendingSaves() {
+		synchronized (pendingSaves) {
+			return pendingSaves.size();
+		}
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	protected synchronized List<Entry> removeAllEntries() {
+		return removeEntries();
+	}
+
+	/**
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected List<Entry> removeEntries() {
+		List<Entry> result = new ArrayList<Entry>(entries.values());
+		entries.clear();
+		return result;
+	}
+
+	/**
+	 * Starts saving the entries in batches. The entries are marked saved once their save has completed, which is
+	 * right away if doSave returns no result. Returns false if a save could not be started.
+	 *
+	 * @methodtype command
+	 */
+	protected boolean save(List<Entry> batch) {
+		boolean succeeded = true;
+		for (int from = 0; from < batch.size(); from += MAX_BATCH_SIZE) {
+			List<Entry> chunk = new ArrayList<Entry>(batch.subList(from, Math.min(from + MAX_BATCH_SIZE, batch.size())));
+			List<Persistent> objects = new ArrayList<Persistent>(chunk.size());
+			for (Entry entry : chunk) {
+				objects.add(entry.object);
+			}
+
+			Result<?> result;
+			try {
+				result = doSave(objects);
+			} catch (RuntimeException ex) {
+				log.warning(LogBuilder.createSystemMessage().
+						addException("write-behind save failed, queue objects again", ex).toString());
+				requeue(chunk);
+				succeeded = false;
+				continue;
+			}
+
+			if (result != null) {
+				synchronized (pendingSaves) {
+					pendingSaves.add(new PendingSave(result, chunk));
+				}
+			} else {
+				markSaved(chunk);
+			}
+		}
+
+		return succeeded;
+	}
+
+	/**
+	 * Updates the dependents of the saved entries and marks them clean, unless they have been queued again because
+	 * they were written while the save was pending.
+	 *
+	 * @methodtype command
+	 */
+	protected void markSaved(List<Entry> saved) {
+		for (Entry entry : saved) {
+			if (!isQueued(entry.object)) {
+				entry.manager.updateDependents(entry.object);
+				entry.object.resetWriteCount();
+			}
+		}
+	}
+
+	/**
+	 * Queues the entries of a failed save again, unless a newer write of the same entity is queued.
+	 *
+	 * @methodtype command
+	 */
+	protected synchronized void requeue(List<Entry> failed) {
+		if (entries.isEmpty()) {
+			oldestEntryTime = System.currentTimeMillis();
+		}
+		for (Entry entry : failed) {
+			Object key = asBufferKey(entry.object);
+			if (!entries.containsKey(key)) {
+				entries.put(key, entry);
+			}
+		}
+	}
+
+	/**
+	 * @methodtype boolean-query
+	 */
+	protected synchronized boolean isQueued(Persistent object) {
+		Entry entry = entries.get(asBufferKey(object));
+		return entry != null && entry.object == object;
+	}
+
+	/**
+	 * Starts saving the objects; the entities are translated right away, the RPC completes asynchronously.
+	 *
+	 * @methodtype command
+	 * @methodproperty primitive
+	 */
+	protected Result<?> doSave(List<Persistent> objects) {
+		return OfyService.ofy().save().entities(objects);
+	}
+
+	/**
+	 * Entities with an id are identified by their key, so that different instances of one entity are coalesced.
+	 *
+	 * @methodtype conversion
+	 */
+	protected Object asBufferKey(Object object) {
+		try {
+			return Key.create(object);
+		} catch (IllegalArgumentException ex) {
+			return new IdentityKey(object);
+		}
+	}
+
+	/**
+	 * A queued write
+	 */
+	protected static class Entry {
+
+		protected final ObjectManager manager;
+		protected final Persistent object;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected Entry(ObjectManager manager, Persistent object) {
+			this.manager = manager;
+			this.object = object;
+		}
+	}
+
+	/**
+	 * A save that was started asynchronously
+	 */
+	protected static class PendingSave {
+
+		protected final Result<?> result;
+		protected final List<Entry> entries;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected PendingSave(Result<?> result, List<Entry> entries) {
+			this.result = result;
+			this.entries = entries;
+		}
+	}
+
+	/**
+	 * Compares the wrapped object by identity
+	 */
+	protected static class IdentityKey {
+
+		protected final Object object;
+
+		/**
+		 * @methodtype constructor
+		 */
+		protected IdentityKey(Object object) {
+			this.object = object;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityKey && ((IdentityKey) obj).object == object;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(object);
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019 M4eqP@users.noreply.github.com
+ * This file is part of the Wahlzeit photo rating application.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package org.wahlzeit.services;
+
+/**
+ * Number of objects and estimated number of bytes written to the datastore by a save.
+ */
+public class WriteStatistics {
+
+	/**
+	 *
+	 */
+	protected int noObjects = 0;
+	protected long noBytes = 0;
+
+	/**
+	 * @methodtype command
+	 */
+	public void addObject(long estimatedSize) {
+		noObjects++;
+		noBytes += estimatedSize;
+	}
+
+	/**
+	 * @methodtype command
+	 */
+	public void addAll(WriteStatistics other) {
+		noObjects += other.noObjects;
+		noBytes += other.noBytes;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public int getNoObjects() {
+		return noObjects;
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	public long getNoBytes() {
+		return noBytes;
+	}
+
+	/**
+	 * @methodtype conversion
+	 */
+	public String asString() {
+		return noObjects + " objects, " + noBytes + " bytes";
+	}
+
+}
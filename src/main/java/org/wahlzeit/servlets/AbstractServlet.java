@@ -21,10 +21,12 @@
 package org.wahlzeit.servlets;
 
 import org.wahlzeit.main.ServiceMain;
+import org.wahlzeit.model.GlobalsManager;
 import org.wahlzeit.model.UserSession;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.Session;
 import org.wahlzeit.services.SessionManager;
+import org.wahlzeit.services.WriteBehindBuffer;
 import org.wahlzeit.utils.StringUtil;
 import org.wahlzeit.webparts.WebPart;
 
@@ -66,6 +68,13 @@ public abstract class AbstractServlet extends HttpServlet {
 		lastSessionId = newSessionId;
 	}
 
+	/**
+	 *
+	 */
+	public static synchronized void raiseLastSessionId(int minSessionId) {
+		lastSessionId = Math.max(lastSessionId, minSessionId);
+	}
+
 	/**
 	 *
 	 */
@@ -83,13 +92,17 @@ public abstract class AbstractServlet extends HttpServlet {
 		UserSession us = ensureUserSession(request);
 		SessionManager.setThreadLocalSession(us);
 
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myGet(request, response);
+		try {
+			if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				myGet(request, response);
+			}
+		} finally {
+			GlobalsManager.getInstance().saveGlobalsIfDue();
+			WriteBehindBuffer.getInstance().flush();
+			SessionManager.dropThreadLocalSession();
 		}
-
-		SessionManager.dropThreadLocalSession();
 	}
 
 	/**
@@ -102,13 +115,17 @@ public abstract class AbstractServlet extends HttpServlet {
 		UserSession us = ensureUserSession(request);
 		SessionManager.setThreadLocalSession(us);
 
-		if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
-			displayNullPage(request, response);
-		} else {
-			myPost(request, response);
+		try {
+			if (ServiceMain.getInstance().isShuttingDown() || (us == null)) {
+				displayNullPage(request, response);
+			} else {
+				myPost(request, response);
+			}
+		} finally {
+			GlobalsManager.getInstance().saveGlobalsIfDue();
+			WriteBehindBuffer.getInstance().flush();
+			SessionManager.dropThreadLocalSession();
 		}
-
-		SessionManager.dropThreadLocalSession();
 	}
 
 	/**
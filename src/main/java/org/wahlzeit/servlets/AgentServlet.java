@@ -22,6 +22,7 @@ package org.wahlzeit.servlets;
 
 import org.wahlzeit.agents.AgentManager;
 import org.wahlzeit.services.LogBuilder;
+import org.wahlzeit.services.WriteBehindBuffer;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -56,6 +57,8 @@ public class AgentServlet extends HttpServlet {
 		} catch (Exception e) {
 			log.warning(LogBuilder.createSystemMessage().addException("Problem when starting the agent", e).toString());
 			response.setStatus(299);
+		} finally {
+			WriteBehindBuffer.getInstance().flush();
 		}
 	}
 
@@ -1,25 +1,49 @@
 package org.wahlzeit.servlets;
 
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.apphosting.api.ApiProxy;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+import org.wahlzeit.agents.AsyncTaskExecutor;
 import org.wahlzeit.model.Client;
 import org.wahlzeit.model.Guest;
 import org.wahlzeit.model.UserManager;
 import org.wahlzeit.services.LogBuilder;
 import org.wahlzeit.services.OfyService;
+import org.wahlzeit.utils.StringUtil;
 
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
 /**
- * This servlet is run to cleanup expired sessions.
+ * This servlet is run to cleanup expired sessions. Sessions are read keys-only in pages and deleted in batches; a run
+ * that gets close to the request deadline enqueues a task that continues with the remaining pages.
  */
 public class SessionCleanupServlet extends HttpServlet {
 
+	/**
+	 * Request parameters
+	 */
+	public static final String CLEAR = "clear";
+	public static final String CURSOR = "cursor";
+	public static final String EXPIRES_BEFORE = "expiresBefore";
+
+	/**
+	 * Number of sessions read and deleted at once, the datastore limit for batch deletes
+	 */
+	protected static final int PAGE_SIZE = 500;
+
+	/**
+	 * Time that must be left to process another page
+	 */
+	protected static final long MIN_REMAINING_MILLIS = 10000;
+
 	private static final String SESSION_ENTITY_TYPE = "_ah_SESSION";
 	private static final String EXPIRES_PROP = "_expires";
 
@@ -27,39 +51,57 @@ public class SessionCleanupServlet extends HttpServlet {
 
 	@Override
 	public void service(HttpServletRequest request, HttpServletResponse response) {
-		if ("clear".equals(request.getQueryString())) {
-			clearAll(response);
+		if (request.getParameter(CLEAR) != null) {
+			String cursor = request.getParameter(CURSOR);
+			String expiresBefore = request.getParameter(EXPIRES_BEFORE);
+			long expires = StringUtil.isNullOrEmptyString(expiresBefore) ?
+					System.currentTimeMillis() : Long.parseLong(expiresBefore);
+			clearAll(response, cursor, expires);
 		}
 	}
 
 	/**
-	 * Clears all {@link HttpSession}s in the datastore that are expired and if they are guest sessions, deletes the
-	 * corresponding {@link Guest} object, too.
+	 * Clears all {@link HttpSession}s in the datastore that expired before the given time and if they are guest
+	 * sessions, deletes the corresponding {@link Guest} objects, too. The query keeps its time bound when it is
+	 * continued, so that the cursor stays valid.
 	 */
-	private void clearAll(HttpServletResponse response) {
+	private void clearAll(HttpServletResponse response, String cursor, long expiresBefore) {
+		int noDeletedSessions = 0;
 
-		List<Object> killList = OfyService.ofy().load().
-				kind(SESSION_ENTITY_TYPE).
-				filter(EXPIRES_PROP + " <", System.currentTimeMillis()).list();
+		try {
+			boolean hasMorePages = true;
+			while (hasMorePages) {
+				if (getRemainingMillis() < MIN_REMAINING_MILLIS) {
+					AsyncTaskExecutor.cleanupSessionsAsync(cursor, expiresBefore);
+					log.info(LogBuilder.createSystemMessage().
+							addAction("continue session cleanup in a new task").
+							addParameter("number of deleted sessions", noDeletedSessions).toString());
+					break;
+				}
 
-		log.config(LogBuilder.createSystemMessage().
-				addParameter("number of old sessions to delete from datastore", killList.size()).toString());
+				Query<Object> query = OfyService.ofy().load().
+						kind(SESSION_ENTITY_TYPE).
+						filter(EXPIRES_PROP + " <", expiresBefore).
+						limit(PAGE_SIZE);
+				if (cursor != null) {
+					query = query.startAt(Cursor.fromWebSafeString(cursor));
+				}
 
-		try {
-			for (Object o : killList) {
-				Entity httpSessionEntity = (Entity) o;
-				Key key = httpSessionEntity.getKey();
-				// GAE does not use session id as key name, instead "_ahs<sessionId>"
-				String sessionId = key.getName().substring(4);
-				log.config(LogBuilder.createSystemMessage().
-						addAction("delete session").
-						addParameter("session id", sessionId).toString());
-				Client client = UserManager.getInstance().getClientByHttpSessionId(sessionId);
-				if (client != null && client instanceof Guest) {
-					UserManager.getInstance().deleteClient(client);
+				List<Key<Object>> keys = new ArrayList<Key<Object>>(PAGE_SIZE);
+				QueryResultIterator<Key<Object>> iterator = query.keys().iterator();
+				while (iterator.hasNext()) {
+					keys.add(iterator.next());
 				}
-				OfyService.ofy().delete().entity(httpSessionEntity).now();
+
+				deleteSessions(keys);
+				noDeletedSessions += keys.size();
+
+				hasMorePages = keys.size() == PAGE_SIZE;
+				cursor = iterator.getCursor().toWebSafeString();
 			}
+
+			log.config(LogBuilder.createSystemMessage().
+					addParameter("number of old sessions deleted from datastore", noDeletedSessions).toString());
 			response.setStatus(HttpServletResponse.SC_OK);
 		} catch (Exception e) {
 			log.config(LogBuilder.createSystemMessage().
@@ -67,4 +109,39 @@ public class SessionCleanupServlet extends HttpServlet {
 			response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
 		}
 	}
+
+	/**
+	 * Deletes the sessions and their guests, each with one batched delete.
+	 */
+	private void deleteSessions(List<Key<Object>> keys) {
+		if (keys.isEmpty()) {
+			return;
+		}
+
+		UserManager userManager = UserManager.getInstance();
+		List<Client> guests = new ArrayList<Client>();
+		for (Key<Object> key : keys) {
+			// GAE does not use session id as key name, instead "_ahs<sessionId>"
+			String sessionId = key.getName().substring(4);
+			Client client = userManager.getClientByHttpSessionId(sessionId);
+			if (client instanceof Guest) {
+				guests.add(client);
+			}
+		}
+
+		log.config(LogBuilder.createSystemMessage().
+				addAction("delete sessions").
+				addParameter("number of sessions", keys.size()).
+				addParameter("number of guests", guests.size()).toString());
+		userManager.deleteClients(guests);
+		OfyService.ofy().delete().keys(keys).now();
+	}
+
+	/**
+	 * @methodtype get
+	 */
+	protected long getRemainingMillis() {
+		ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+		return (environment != null) ? environment.getRemainingMillis() : Long.MAX_VALUE;
+	}
 }
@@ -2,10 +2,6 @@ package org.wahlzeit.servlets;
 
 import com.google.appengine.api.images.Image;
 import org.apache.http.HttpStatus;
-import org.wahlzeit.model.Photo;
-import org.wahlzeit.model.PhotoManager;
-import org.wahlzeit.model.PhotoSize;
-import org.wahlzeit.model.SingletonManager;
 import org.wahlzeit.model.persistence.ImageStorage;
 import org.wahlzeit.services.LogBuilder;
 
@@ -64,29 +60,20 @@ public class StaticDataServlet extends AbstractServlet {
 	/**
 	 * @methodtype command
 	 *
-	 * Loads image either from the <@link>PhotoManager</@link> or from the <@link>ImageStorage</@link>. If image does
-	 * not exist, null is returned.
+	 * Loads image through the <@link>ImageStorage</@link>, which serves it from its image cache if possible. If image
+	 * does not exist, null is returned.
 	 */
 	private Image getImage(String photoId, int size) {
 		Image image = null;
-		Photo photo = SingletonManager.getPhotoManager().getPhoto(photoId);
-		if (photo != null) {
-			PhotoSize photoSize = PhotoSize.getFromInt(size);
-			image = photo.getImage(photoSize);
+		Serializable rawImage = null;
+		try {
+			rawImage = ImageStorage.getInstance().readImage(photoId, size);
+		} catch (IOException e) {
+			log.warning(LogBuilder.createSystemMessage().addException("Problem when reading image.", e).toString());
 		}
-		// if not in cache load from Google Cloud Storage
-		if (image == null) {
-			Serializable rawImage = null;
-			try {
-				rawImage = ImageStorage.getInstance().readImage(photoId, size);
-			} catch (IOException e) {
-				log.warning(LogBuilder.createSystemMessage().addException("Problem when reading image.", e).toString());
-			}
-			if (rawImage != null && rawImage instanceof Image) {
-				image = (Image) rawImage;
-			}
+		if (rawImage != null && rawImage instanceof Image) {
+			image = (Image) rawImage;
 		}
 		return image;
 	}
 }
-
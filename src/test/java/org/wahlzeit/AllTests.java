@@ -35,21 +35,32 @@ import org.wahlzeit.utils.*;
 
     // model tests
     DatastoreAdapterTest.class,
+    ImageCacheTest.class,
     AccessRightsTest.class,
     CartesianCoordinateTest.class,
+    CoordinateColumnsTest.class,
     FlagReasonTest.class,
     GenderTest.class,
+    GlobalsTest.class,
     GuestTest.class,
+    LocationIndexTest.class,
     LocationTest.class,
     PhotoFilterTest.class,
+    PhotoIdTest.class,
+    PhotoIdSetTest.class,
+    PraiseCounterManagerTest.class,
+    TagIndexTest.class,
     TagsTest.class,
+    UserManagerTest.class,
     UserStatusTest.class,
     ValueTest.class,
+    VisiblePhotoIdsTest.class,
     ChestnutPhotoFactoryTest.class,
     ChestnutPhotoManagerTest.class,
     ChestnutCompositionTypeTest.class,
     ChestnutCompositionManagerTest.class,
     ChestnutCompositionTest.class,
+    ChestnutFacetIndexTest.class,
     ChestnutPhotoTest.class,
     SingletonManagerTest.class,
     SphericCoordinateTest.class,
@@ -62,6 +73,9 @@ import org.wahlzeit.utils.*;
     // new test suite
     EmailServiceTestSuite.class,
     // existing test case
+    DirtyObjectTrackerTest.class,
     EmailAddressTest.class,
+    SegmentedLruCacheTest.class,
+    WriteBehindBufferTest.class,
 })
 public class AllTests {}
@@ -63,6 +63,16 @@ public class CartesianCoordinateTest {
         assertEquals(30, c1.getZ(), 0.000001);
     }
 
+    @Test
+    public void testSphericRepresentationIsCached() {
+        CartesianCoordinate c1 = Coordinate.getCartesianCoordinate(10, 20, 30);
+        SphericCoordinate spheric = c1.asSphericCoordinate();
+
+        assertSame(spheric, c1.asSphericCoordinate());
+        assertSame(c1, spheric.asCartesianCoordinate());
+        assertSame(spheric, Coordinate.getSphericCoordinate(spheric.getPhi(), spheric.getTheta(), spheric.getRadius()));
+    }
+
     @Test
     public void testConversionFromAndToSphericCoordinate() {
         CartesianCoordinate c1 = Coordinate.getCartesianCoordinate(10, 20 ,30);
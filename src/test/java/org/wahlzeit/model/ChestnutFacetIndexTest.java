@@ -0,0 +1,109 @@
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link ChestnutFacetIndex}.
+ */
+public class ChestnutFacetIndexTest {
+
+    private ChestnutFacetIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ChestnutFacetIndex();
+    }
+
+    private static ChestnutComposition createComposition(ChestnutCompositionType.Orientation orientation, int count) {
+        return new ChestnutComposition(new ChestnutCompositionType(orientation), count);
+    }
+
+    @Test
+    public void testPhotoIdsByOrientation() {
+        index.setComposition(new PhotoId(1), createComposition(ChestnutCompositionType.Orientation.TOP, 3));
+        index.setComposition(new PhotoId(2), createComposition(ChestnutCompositionType.Orientation.TOP, 7));
+        index.setComposition(new PhotoId(3), createComposition(ChestnutCompositionType.Orientation.FRONT, 5));
+
+        PhotoIdSet top = index.getPhotoIds(ChestnutCompositionType.Orientation.TOP);
+        assertEquals(2, top.size());
+        assertTrue(top.contains(new PhotoId(1)));
+        assertTrue(top.contains(new PhotoId(2)));
+        assertTrue(index.getPhotoIds(ChestnutCompositionType.Orientation.REAR).isEmpty());
+
+        // returned sets are copies
+        top.clear();
+        assertEquals(2, index.getPhotoIds(ChestnutCompositionType.Orientation.TOP).size());
+    }
+
+    @Test
+    public void testPhotoIdsWithMinCount() {
+        index.setComposition(new PhotoId(1), createComposition(ChestnutCompositionType.Orientation.TOP, 3));
+        index.setComposition(new PhotoId(2), createComposition(ChestnutCompositionType.Orientation.TOP, 7));
+        index.setComposition(new PhotoId(3), createComposition(ChestnutCompositionType.Orientation.FRONT, 5));
+
+        PhotoIdSet result = index.getPhotoIdsWithMinCount(5);
+        assertEquals(2, result.size());
+        assertTrue(result.contains(new PhotoId(2)));
+        assertTrue(result.contains(new PhotoId(3)));
+
+        assertEquals(3, index.getPhotoIdsWithMinCount(0).size());
+        assertTrue(index.getPhotoIdsWithMinCount(8).isEmpty());
+    }
+
+    @Test
+    public void testCounts() {
+        index.setComposition(new PhotoId(1), createComposition(ChestnutCompositionType.Orientation.TOP, 3));
+        index.setComposition(new PhotoId(2), createComposition(ChestnutCompositionType.Orientation.TOP, 7));
+        index.setComposition(new PhotoId(3), createComposition(ChestnutCompositionType.Orientation.FRONT, 3));
+
+        Map<ChestnutCompositionType.Orientation, Integer> counts = index.getOrientationCounts();
+        assertEquals(ChestnutCompositionType.Orientation.values().length, counts.size());
+        assertEquals(Integer.valueOf(2), counts.get(ChestnutCompositionType.Orientation.TOP));
+        assertEquals(Integer.valueOf(1), counts.get(ChestnutCompositionType.Orientation.FRONT));
+        assertEquals(Integer.valueOf(0), counts.get(ChestnutCompositionType.Orientation.RANDOM));
+
+        SortedMap<Integer, Integer> histogram = index.getCountHistogram();
+        assertEquals(2, histogram.size());
+        assertEquals(Integer.valueOf(3), histogram.firstKey());
+        assertEquals(Integer.valueOf(2), histogram.get(3));
+        assertEquals(Integer.valueOf(1), histogram.get(7));
+    }
+
+    @Test
+    public void testReplaceComposition() {
+        PhotoId id = new PhotoId(1);
+        index.setComposition(id, createComposition(ChestnutCompositionType.Orientation.TOP, 3));
+        index.setComposition(id, createComposition(ChestnutCompositionType.Orientation.BOTTOM, 9));
+
+        assertEquals(1, index.getNoPhotos());
+        assertTrue(index.getPhotoIds(ChestnutCompositionType.Orientation.TOP).isEmpty());
+        assertTrue(index.getPhotoIds(ChestnutCompositionType.Orientation.BOTTOM).contains(id));
+        assertFalse(index.getCountHistogram().containsKey(3));
+        assertTrue(index.getPhotoIdsWithMinCount(9).contains(id));
+    }
+
+    @Test
+    public void testRemovePhoto() {
+        PhotoId id = new PhotoId(1);
+        index.setComposition(id, createComposition(ChestnutCompositionType.Orientation.TOP, 3));
+        index.setComposition(new PhotoId(2), createComposition(ChestnutCompositionType.Orientation.TOP, 4));
+
+        index.removePhoto(id);
+        assertFalse(index.hasPhoto(id));
+        assertEquals(1, index.getNoPhotos());
+        assertEquals(Integer.valueOf(1), index.getOrientationCounts().get(ChestnutCompositionType.Orientation.TOP));
+        assertFalse(index.getCountHistogram().containsKey(3));
+
+        // null removes the photo as well
+        index.setComposition(new PhotoId(2), null);
+        assertEquals(0, index.getNoPhotos());
+        assertTrue(index.getCountHistogram().isEmpty());
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CoordinateColumnsTest {
+    @Test
+    public void testResultsMatchScalarMethods() {
+        Random random = new Random(42);
+        List<Coordinate> coordinates = new ArrayList<>();
+        CoordinateColumns columns = new CoordinateColumns(4);
+        for (int i = 0; i < 500; i++) {
+            Coordinate coordinate = (i % 2 == 0) ? randomSphericCoordinate(random) : randomCartesianCoordinate(random);
+            assertEquals(i, columns.add(coordinate));
+            coordinates.add(coordinate);
+        }
+        assertEquals(coordinates.size(), columns.size());
+
+        double[] distances = new double[columns.size()];
+        double[] angles = new double[columns.size()];
+        for (int q = 0; q < 20; q++) {
+            Coordinate query = (q % 2 == 0) ? randomCartesianCoordinate(random) : randomSphericCoordinate(random);
+            columns.getCartesianDistances(query, distances);
+            columns.getCentralAngles(query, angles);
+
+            for (int i = 0; i < coordinates.size(); i++) {
+                Coordinate target = coordinates.get(i);
+                assertEquals(query.getCartesianDistance(target), distances[i], 1e-9);
+                assertEquals(query.getCentralAngle(target), angles[i], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testKnownValues() {
+        CoordinateColumns columns = new CoordinateColumns();
+        columns.add(Coordinate.getCartesianCoordinate(1, 1, 1));
+        columns.add(Coordinate.getCartesianCoordinate(1, 2, 3));
+
+        double[] distances = new double[2];
+        columns.getCartesianDistances(new CartesianCoordinate(0, 0, 0), distances);
+        assertEquals(Math.sqrt(3), distances[0], 0.000001);
+        assertEquals(Math.sqrt(14), distances[1], 0.000001);
+
+        columns.clear();
+        assertEquals(0, columns.size());
+    }
+
+    @Test
+    public void testOriginHasNoCentralAngle() {
+        CoordinateColumns columns = new CoordinateColumns();
+        columns.add(new CartesianCoordinate(0, 0, 0));
+
+        double[] angles = new double[1];
+        columns.getCentralAngles(new SphericCoordinate(1, 1, 1), angles);
+        assertTrue(Double.isNaN(angles[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResultMustHoldAllCoordinates() {
+        CoordinateColumns columns = new CoordinateColumns();
+        columns.add(new CartesianCoordinate(1, 2, 3));
+        columns.getCartesianDistances(new CartesianCoordinate(0, 0, 0), new double[0]);
+    }
+
+    private static CartesianCoordinate randomCartesianCoordinate(Random random) {
+        return new CartesianCoordinate(random.nextGaussian() * 100, random.nextGaussian() * 100,
+                random.nextGaussian() * 100);
+    }
+
+    private static SphericCoordinate randomSphericCoordinate(Random random) {
+        return new SphericCoordinate(random.nextDouble() * 2 * Math.PI - Math.PI, random.nextDouble() * Math.PI,
+                random.nextDouble() * 100);
+    }
+}
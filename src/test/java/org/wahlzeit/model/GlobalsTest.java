@@ -0,0 +1,43 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GlobalsTest {
+
+    private static Globals createGlobals(long lastUserId, int lastPhotoId, int lastCaseId, int lastSessionId) {
+        Globals result = new Globals();
+        result.setLastUserId(lastUserId);
+        result.setLastPhotoId(lastPhotoId);
+        result.setLastCaseId(lastCaseId);
+        result.setLastSessionId(lastSessionId);
+        return result;
+    }
+
+    @Test
+    public void testMergeMax() {
+        Globals globals = createGlobals(5, 100, 3, 40);
+        globals.mergeMax(createGlobals(7, 90, 3, 50));
+
+        assertEquals(Long.valueOf(7), globals.getLastUserId());
+        assertEquals(100, globals.getLastPhotoId());
+        assertEquals(3, globals.getLastCaseId());
+        assertEquals(50, globals.getLastSessionId());
+    }
+
+    @Test
+    public void testMergeMaxWithoutUserId() {
+        Globals globals = createGlobals(5, 1, 1, 1);
+        globals.mergeMax(new Globals());
+
+        assertEquals(Long.valueOf(5), globals.getLastUserId());
+    }
+
+    @Test
+    public void testHasSameIds() {
+        assertTrue(createGlobals(1, 2, 3, 4).hasSameIds(createGlobals(1, 2, 3, 4)));
+        assertFalse(createGlobals(1, 2, 3, 4).hasSameIds(createGlobals(1, 2, 3, 5)));
+        assertFalse(createGlobals(1, 2, 3, 4).hasSameIds(createGlobals(2, 2, 3, 4)));
+    }
+}
@@ -9,7 +9,11 @@ import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvi
 import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test class for {@link Guest}.
@@ -25,8 +29,13 @@ public class GuestTest {
 	@Test
 	public void testNameGeneration() {
 		int clientId = ClientManager.lastClientId.intValue();
-		assertNewGuestHasId(++clientId);
-		assertNewGuestHasId(++clientId);
+		// ephemeral guests should not consume a next id
+		Guest first = createGuest();
+		Guest second = createGuest();
+		assertTrue(first.getId().startsWith(Guest.EPHEMERAL_GUEST_PREFIX));
+		assertFalse(first.getId().equals(second.getId()));
+		assertEquals(clientId, ClientManager.lastClientId.intValue());
+
 		// creation of user should not consume a next id
 		ObjectifyService.run(new Work<Void>() {
 			@Override
@@ -35,25 +44,56 @@ public class GuestTest {
 				return null;
 			}
 		});
-		assertNewGuestHasId(++clientId);
+		assertPersistedGuestHasId(first, ++clientId);
+		assertPersistedGuestHasId(second, ++clientId);
 
-		clientId -= 3;
 		// test if GUEST_PREFIX == guest#
-		testGetGuestFromUserManager("guest#" + ++clientId);
-		testGetGuestFromUserManager(Guest.GUEST_PREFIX + ++clientId);
-		testGetGuestFromUserManager(Guest.GUEST_PREFIX + ++clientId);
+		testGetGuestFromUserManager("guest#" + (clientId - 1));
+		testGetGuestFromUserManager(Guest.GUEST_PREFIX + clientId);
+	}
+
+	@Test
+	public void testNewGuestIsEphemeral() {
+		final Guest guest = createGuest();
+		assertTrue(guest.isEphemeral());
+		assertFalse(guest.isDirty());
+
+		guest.setLanguage(guest.getLanguage());
+		assertFalse(guest.isDirty());
+
+		ObjectifyService.run(new Work<Void>() {
+			@Override
+			public Void run() {
+				UserManager.getInstance().persistClient(guest);
+				return null;
+			}
+		});
+		assertFalse(guest.isEphemeral());
 	}
 
-	protected void assertNewGuestHasId(int id) {
-		Guest testGuest = ObjectifyService.run(new Work<Guest>() {
+	protected Guest createGuest() {
+		return ObjectifyService.run(new Work<Guest>() {
 			@Override
 			public Guest run() {
 				return new Guest();
 			}
 		});
-		String userName = testGuest.getId();
+	}
+
+	protected void assertPersistedGuestHasId(final Guest guest, int id) {
+		String ephemeralId = guest.getId();
+		ObjectifyService.run(new Work<Void>() {
+			@Override
+			public Void run() {
+				UserManager.getInstance().persistClient(guest);
+				return null;
+			}
+		});
 		String expectedUserName = Guest.GUEST_PREFIX + id;
-		assertEquals(expectedUserName, userName);
+		assertEquals(expectedUserName, guest.getId());
+		assertEquals(expectedUserName, guest.getNickName());
+		assertSame(guest, UserManager.getInstance().getClientById(expectedUserName));
+		assertNull(UserManager.getInstance().getClientById(ephemeralId));
 	}
 
 	protected void testGetGuestFromUserManager(String name) {
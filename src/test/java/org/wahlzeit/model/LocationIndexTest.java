@@ -0,0 +1,135 @@
+package org.wahlzeit.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link LocationIndex}.
+ */
+public class LocationIndexTest {
+
+    private LocationIndex index;
+
+    @Before
+    public void setUp() {
+        index = new LocationIndex(1.0);
+    }
+
+    @Test
+    public void testPhotoIdsWithin() {
+        index.setLocation(new PhotoId(1), new Location(0, 0, 0));
+        index.setLocation(new PhotoId(2), new Location(0.5, 0.5, 0));
+        index.setLocation(new PhotoId(3), new Location(3, 0, 0));
+        index.setLocation(new PhotoId(4), new Location(-1.9, 0, 0));
+
+        PhotoIdSet result = index.getPhotoIdsWithin(new CartesianCoordinate(0, 0, 0), 2);
+        assertEquals(3, result.size());
+        assertTrue(result.contains(new PhotoId(1)));
+        assertTrue(result.contains(new PhotoId(2)));
+        assertTrue(result.contains(new PhotoId(4)));
+
+        // larger than all occupied cells
+        assertEquals(4, index.getPhotoIdsWithin(new CartesianCoordinate(0, 0, 0), 1000).size());
+        assertTrue(index.getPhotoIdsWithin(new CartesianCoordinate(0, 0, 0), -1).isEmpty());
+    }
+
+    @Test
+    public void testSetLocationMovesPhoto() {
+        PhotoId id = new PhotoId(1);
+        index.setLocation(id, new Location(0, 0, 0));
+        index.setLocation(id, new Location(10, 10, 10));
+
+        assertEquals(1, index.getNoPhotos());
+        assertTrue(index.getPhotoIdsWithin(new CartesianCoordinate(0, 0, 0), 1).isEmpty());
+        assertTrue(index.getPhotoIdsWithin(new CartesianCoordinate(10, 10, 10), 1).contains(id));
+
+        index.setLocation(id, null);
+        assertFalse(index.hasPhoto(id));
+        assertTrue(index.getPhotoIdsWithin(new CartesianCoordinate(10, 10, 10), 1).isEmpty());
+    }
+
+    @Test
+    public void testBoundsShrinkOnRemove() {
+        index.setLocation(new PhotoId(1), new Location(0, 0, 0));
+        index.setLocation(new PhotoId(2), new Location(100, 0, 0));
+        assertEquals(100, index.getMaxDistance(0, 0, 0));
+
+        index.removePhoto(new PhotoId(2));
+        assertEquals(0, index.getMaxDistance(0, 0, 0));
+
+        index.removePhoto(new PhotoId(1));
+        assertEquals(-1, index.getMaxDistance(0, 0, 0));
+    }
+
+    @Test
+    public void testNearestPhotoIds() {
+        index.setLocation(new PhotoId(1), new Location(5, 0, 0));
+        index.setLocation(new PhotoId(2), new Location(1, 0, 0));
+        index.setLocation(new PhotoId(3), new Location(0, 3, 0));
+        index.setLocation(new PhotoId(4), new Location(100, 100, 100));
+
+        List<PhotoId> result = index.getNearestPhotoIds(new CartesianCoordinate(0, 0, 0), 3);
+        assertEquals(3, result.size());
+        assertEquals(new PhotoId(2), result.get(0));
+        assertEquals(new PhotoId(3), result.get(1));
+        assertEquals(new PhotoId(1), result.get(2));
+
+        assertEquals(4, index.getNearestPhotoIds(new CartesianCoordinate(0, 0, 0), 10).size());
+        assertTrue(index.getNearestPhotoIds(new CartesianCoordinate(0, 0, 0), 0).isEmpty());
+        assertTrue(new LocationIndex().getNearestPhotoIds(new CartesianCoordinate(0, 0, 0), 3).isEmpty());
+    }
+
+    @Test
+    public void testQueriesMatchFullScan() {
+        Random random = new Random(42);
+        final List<double[]> points = new ArrayList<double[]>();
+        for (int i = 1; i <= 2000; i++) {
+            double[] point = {random.nextGaussian() * 20, random.nextGaussian() * 20, random.nextGaussian() * 5, i};
+            points.add(point);
+            index.setLocation(new PhotoId(i), new Location(point[0], point[1], point[2]));
+        }
+
+        for (int query = 0; query < 20; query++) {
+            final double x = random.nextDouble() * 80 - 40;
+            final double y = random.nextDouble() * 80 - 40;
+            final double z = random.nextDouble() * 20 - 10;
+            double radius = random.nextDouble() * 10;
+            CartesianCoordinate center = new CartesianCoordinate(x, y, z);
+
+            PhotoIdSet within = index.getPhotoIdsWithin(center, radius);
+            int noWithin = 0;
+            for (double[] point : points) {
+                if (getDistance(point, x, y, z) <= radius) {
+                    assertTrue(within.contains(new PhotoId((int) point[3])));
+                    noWithin++;
+                }
+            }
+            assertEquals(noWithin, within.size());
+
+            Collections.sort(points, new Comparator<double[]>() {
+                @Override
+                public int compare(double[] first, double[] second) {
+                    return Double.compare(getDistance(first, x, y, z), getDistance(second, x, y, z));
+                }
+            });
+            List<PhotoId> nearest = index.getNearestPhotoIds(center, 15);
+            assertEquals(15, nearest.size());
+            for (int i = 0; i < nearest.size(); i++) {
+                assertEquals(new PhotoId((int) points.get(i)[3]), nearest.get(i));
+            }
+        }
+    }
+
+    private static double getDistance(double[] point, double x, double y, double z) {
+        return Math.sqrt((point[0] - x) * (point[0] - x) + (point[1] - y) * (point[1] - y)
+                + (point[2] - z) * (point[2] - z));
+    }
+}
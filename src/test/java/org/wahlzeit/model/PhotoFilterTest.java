@@ -22,12 +22,35 @@ package org.wahlzeit.model;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Base64;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class PhotoFilterTest {
 
+	/**
+	 * A filter of the first version, with user name "anna", tag "flower", processed photo ids 1 and 2 and skipped
+	 * photo id 3, as serialized into existing sessions
+	 */
+	private static final String FIRST_VERSION_FILTER =
+			"rO0ABXNyAB5vcmcud2FobHplaXQubW9kZWwuUGhvdG9GaWx0ZXJH6ZqtShUInAIABkwAE2Rpc3BsYXlhYmxlUGhvdG9JZHN0"
+			+ "ABBMamF2YS91dGlsL0xpc3Q7TAARcHJvY2Vzc2VkUGhvdG9JZHNxAH4AAUwADHJhbmRvbU51bWJlcnQAEkxqYXZhL3V0aWwv"
+			+ "UmFuZG9tO0wAD3NraXBwZWRQaG90b0lkc3EAfgABTAAEdGFnc3QAGUxvcmcvd2FobHplaXQvbW9kZWwvVGFncztMAAh1c2Vy"
+			+ "TmFtZXQAEkxqYXZhL2xhbmcvU3RyaW5nO3hwc3IAE2phdmEudXRpbC5BcnJheUxpc3R4gdIdmcdhnQMAAUkABHNpemV4cAAA"
+			+ "AAB3BAAAAAB4c3IAFGphdmEudXRpbC5MaW5rZWRMaXN0DClTXUpgiCIDAAB4cHcEAAAAAnNyABpvcmcud2FobHplaXQubW9k"
+			+ "ZWwuUGhvdG9JZNdduhzq2HqUAgACSQAFdmFsdWVMAAtzdHJpbmdWYWx1ZXEAfgAEeHAAAAABdAAFeDFhYzFzcQB+AAoAAAAC"
+			+ "dAAFeDFhYzJ4c3IAEGphdmEudXRpbC5SYW5kb202MpY0S/AKUwMAA1oAFGhhdmVOZXh0TmV4dEdhdXNzaWFuRAAQbmV4dE5l"
+			+ "eHRHYXVzc2lhbkoABHNlZWR4cAAAAAAAAAAAAAAAAaSQDIBIeHNxAH4ACHcEAAAAAXNxAH4ACgAAAAN0AAV4MWFjM3hzcgAX"
+			+ "b3JnLndhaGx6ZWl0Lm1vZGVsLlRhZ3OlPpO/TsbkqQIAAkMACXNlcGFyYXRvckwABHRhZ3N0AA9MamF2YS91dGlsL1NldDt4"
+			+ "cAAsc3IAEWphdmEudXRpbC5UcmVlU2V03ZhQk5Xth1sDAAB4cHB3BAAAAAF0AAZmbG93ZXJ4dAAEYW5uYQ==";
+
 	private PhotoFilter photoFilter;
 
 	@Before
@@ -84,4 +107,57 @@ public class PhotoFilterTest {
 		assertTrue(photoFilter.processedPhotoIds.isEmpty());
 	}
 
+	/**
+	 *
+	 */
+	@Test
+	public void testSerialization() throws Exception {
+		photoFilter.setUserName("test");
+		photoFilter.processedPhotoIds.add(new PhotoId(2));
+		photoFilter.addSkippedPhotoId(new PhotoId(5));
+		photoFilter.displayablePhotoIds.add(new PhotoId(7));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(photoFilter);
+		out.close();
+		PhotoFilter result = readPhotoFilter(bytes.toByteArray());
+
+		assertEquals("test", result.getUserName());
+		assertTrue(result.isProcessedPhotoId(new PhotoId(2)));
+		assertTrue(result.getSkippedPhotoIds().contains(new PhotoId(5)));
+		assertFalse(result.hasNear());
+		assertTrue(result.getDisplayablePhotoIds().isEmpty());
+	}
+
+	/**
+	 *
+	 */
+	@Test
+	public void testReadFirstVersion() throws Exception {
+		PhotoFilter result = readPhotoFilter(Base64.getDecoder().decode(FIRST_VERSION_FILTER));
+
+		assertEquals("anna", result.getUserName());
+		assertEquals("flower", result.getTags().asString());
+		assertEquals(2, result.getProcessedPhotoIds().size());
+		assertTrue(result.isProcessedPhotoId(new PhotoId(1)));
+		assertTrue(result.isProcessedPhotoId(new PhotoId(2)));
+		assertEquals(1, result.getSkippedPhotoIds().size());
+		assertTrue(result.getSkippedPhotoIds().contains(new PhotoId(3)));
+		assertFalse(result.hasNear());
+		assertNotNull(result.getRandomDisplayablePhotoId());
+	}
+
+	/**
+	 * @methodtype helper
+	 */
+	private static PhotoFilter readPhotoFilter(byte[] bytes) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return (PhotoFilter) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
 }
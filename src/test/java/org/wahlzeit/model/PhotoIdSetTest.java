@@ -0,0 +1,127 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class PhotoIdSetTest {
+
+    private static int[] asIntArray(TreeSet<Integer> set) {
+        int[] result = new int[set.size()];
+        int i = 0;
+        for (int value : set) {
+            result[i++] = value;
+        }
+        return result;
+    }
+
+    private static void fill(PhotoIdSet set, TreeSet<Integer> expected, Random random, int count, int bound) {
+        for (int i = 0; i < count; i++) {
+            int value = random.nextInt(bound);
+            assertEquals(expected.add(value), set.add(value));
+        }
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        PhotoIdSet set = new PhotoIdSet();
+        assertTrue(set.isEmpty());
+
+        assertTrue(set.add(new PhotoId(5)));
+        assertFalse(set.add(new PhotoId(5)));
+        assertTrue(set.add(70000));
+        assertTrue(set.contains(new PhotoId(5)));
+        assertTrue(set.contains(70000));
+        assertFalse(set.contains(6));
+        assertFalse(set.contains((PhotoId) null));
+        assertEquals(2, set.size());
+
+        assertTrue(set.remove(new PhotoId(5)));
+        assertFalse(set.remove(new PhotoId(5)));
+        assertTrue(set.remove(70000));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test
+    public void testSparseAndDenseChunks() {
+        Random random = new Random(42);
+        PhotoIdSet set = new PhotoIdSet();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+
+        // first chunk becomes a bitmap, the others stay arrays
+        fill(set, expected, random, 20000, 65536);
+        fill(set, expected, random, 100, 1 << 20);
+
+        assertEquals(expected.size(), set.size());
+        assertArrayEquals(asIntArray(expected), set.asIntArray());
+
+        for (int i = 0; i < 19000; i++) {
+            int value = random.nextInt(65536);
+            assertEquals(expected.remove(value), set.remove(value));
+        }
+        assertArrayEquals(asIntArray(expected), set.asIntArray());
+    }
+
+    @Test
+    public void testSetOperations() {
+        Random random = new Random(7);
+        for (int bound : new int[] {1000, 65536, 1 << 18}) {
+            PhotoIdSet a = new PhotoIdSet();
+            PhotoIdSet b = new PhotoIdSet();
+            TreeSet<Integer> expectedA = new TreeSet<Integer>();
+            TreeSet<Integer> expectedB = new TreeSet<Integer>();
+            fill(a, expectedA, random, 10000, bound);
+            fill(b, expectedB, random, 3000, bound);
+
+            PhotoIdSet union = new PhotoIdSet(a);
+            union.addAll(b);
+            TreeSet<Integer> expectedUnion = new TreeSet<Integer>(expectedA);
+            expectedUnion.addAll(expectedB);
+            assertArrayEquals(asIntArray(expectedUnion), union.asIntArray());
+
+            PhotoIdSet intersection = new PhotoIdSet(a);
+            intersection.retainAll(b);
+            TreeSet<Integer> expectedIntersection = new TreeSet<Integer>(expectedA);
+            expectedIntersection.retainAll(expectedB);
+            assertArrayEquals(asIntArray(expectedIntersection), intersection.asIntArray());
+
+            PhotoIdSet difference = new PhotoIdSet(a);
+            difference.removeAll(b);
+            TreeSet<Integer> expectedDifference = new TreeSet<Integer>(expectedA);
+            expectedDifference.removeAll(expectedB);
+            assertArrayEquals(asIntArray(expectedDifference), difference.asIntArray());
+
+            // operands are unchanged
+            assertArrayEquals(asIntArray(expectedA), a.asIntArray());
+            assertArrayEquals(asIntArray(expectedB), b.asIntArray());
+        }
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        Random random = new Random(3);
+        PhotoIdSet set = new PhotoIdSet();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        fill(set, expected, random, 10000, 65536);
+        fill(set, expected, random, 50, 1 << 20);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(set);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        PhotoIdSet copy = (PhotoIdSet) in.readObject();
+
+        assertEquals(set, copy);
+        assertArrayEquals(asIntArray(expected), copy.asIntArray());
+        assertTrue(copy.add(1 << 21));
+    }
+}
@@ -0,0 +1,157 @@
+package org.wahlzeit.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class PhotoIdTest {
+
+    private static class TestLeaser implements PhotoIdLeaser {
+        private int lastLeasedId;
+        private int noLeases = 0;
+
+        TestLeaser(int lastLeasedId) {
+            this.lastLeasedId = lastLeasedId;
+        }
+
+        public synchronized int leasePhotoIds(int blockSize) {
+            noLeases++;
+            int result = lastLeasedId + 1;
+            lastLeasedId += blockSize;
+            return result;
+        }
+    }
+
+    private int savedCurrentId;
+
+    @Before
+    public void setUp() {
+        savedCurrentId = PhotoId.getCurrentIdAsInt();
+    }
+
+    @After
+    public void tearDown() {
+        PhotoId.setLeaser(null);
+        PhotoId.setCurrentIdFromInt(savedCurrentId);
+    }
+
+    @Test
+    public void testIdsWithoutLeaser() {
+        PhotoId.setCurrentIdFromInt(10);
+        assertEquals(11, PhotoId.getNextIdAsInt());
+        assertEquals(12, PhotoId.getNextIdAsInt());
+        assertEquals(12, PhotoId.getCurrentIdAsInt());
+        assertTrue(PhotoId.getIdFromInt(13).isNullId());
+    }
+
+    @Test
+    public void testIdsFromLeasedBlocks() {
+        TestLeaser leaser = new TestLeaser(200);
+        PhotoId.setLeaser(leaser);
+        PhotoId.setCurrentIdFromInt(10);
+
+        int blockSize = PhotoId.DEFAULT_BLOCK_SIZE;
+        assertEquals(201, PhotoId.getNextIdAsInt());
+        assertEquals(1, leaser.noLeases);
+        assertEquals(200 + blockSize, PhotoId.getCurrentIdAsInt());
+
+        for (int i = 1; i < blockSize; i++) {
+            assertEquals(201 + i, PhotoId.getNextIdAsInt());
+        }
+        assertEquals(1, leaser.noLeases);
+
+        // another instance leases a block in between
+        leaser.leasePhotoIds(blockSize);
+        assertEquals(201 + 2 * blockSize, PhotoId.getNextIdAsInt());
+        assertEquals(3, leaser.noLeases);
+
+        // the shared empty block is never counted up
+        assertEquals(0, PhotoId.IdBlock.EMPTY.next.get());
+    }
+
+    @Test
+    public void testConcurrentIdsAreUnique() throws InterruptedException {
+        PhotoId.setLeaser(new TestLeaser(0));
+        PhotoId.setCurrentIdFromInt(0);
+
+        final Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    assertTrue(ids.add(PhotoId.getNextIdAsInt()));
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, ids.size());
+        for (int id : ids) {
+            assertSame(PhotoId.getIdFromInt(id), PhotoId.getIdFromInt(id));
+        }
+    }
+
+    @Test
+    public void testStringConversion() {
+        assertEquals("x1ac1", PhotoId.getFromInt(1));
+        for (int id = 0; id < 100000; id += 37) {
+            assertEquals(id, PhotoId.getFromString(PhotoId.getFromInt(id)));
+        }
+        assertEquals(Integer.MAX_VALUE, PhotoId.getFromString(PhotoId.getFromInt(Integer.MAX_VALUE)));
+
+        assertEquals(0, PhotoId.getFromString(null));
+        assertEquals(0, PhotoId.getFromString("x"));
+        assertEquals(0, PhotoId.getFromString("y1ac0"));
+        assertEquals(0, PhotoId.getFromString("x1AC0"));
+        assertEquals(0, PhotoId.getFromString("x1ac0.html"));
+        assertEquals(0, PhotoId.getFromString("xzzzzzzzzzzzz"));
+    }
+
+    @Test
+    public void testInstancesSurviveReset() {
+        PhotoId.setCurrentIdFromInt(10);
+        PhotoId id = PhotoId.getIdFromInt(5);
+
+        PhotoId.setCurrentIdFromInt(20);
+        assertSame(id, PhotoId.getIdFromInt(5));
+        assertSame(id, PhotoId.getIdFromString(id.asString()));
+        assertSame(PhotoId.NULL_ID, PhotoId.getIdFromInt(0));
+        assertSame(PhotoId.NULL_ID, PhotoId.getIdFromInt(21));
+    }
+
+    @Test
+    public void testTableInternsConcurrently() throws InterruptedException {
+        final PhotoIdTable table = new PhotoIdTable();
+        final PhotoId[][] seen = new PhotoId[4][];
+        Thread[] threads = new Thread[seen.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int threadNo = i;
+            threads[i] = new Thread(() -> {
+                seen[threadNo] = new PhotoId[5 * PhotoIdTable.SEGMENT_SIZE];
+                for (int id = 0; id < seen[threadNo].length; id++) {
+                    seen[threadNo][id] = table.get(id);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int id = 0; id < seen[0].length; id++) {
+            assertEquals(id, seen[0][id].asInt());
+            for (int i = 1; i < seen.length; i++) {
+                assertSame(seen[0][id], seen[i][id]);
+            }
+        }
+        assertSame(seen[0][3], table.putIfAbsent(new PhotoId(3)));
+    }
+}
@@ -0,0 +1,221 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PraiseCounterManagerTest {
+
+    private static class TestPraiseCounterManager extends PraiseCounterManager {
+        private final Map<PhotoId, PraiseCount> shards = new HashMap<PhotoId, PraiseCount>();
+        private int noReads = 0;
+        private int noWrites = 0;
+        private boolean isFailing = false;
+        private boolean isFlushingDuringRead = false;
+
+        TestPraiseCounterManager() {
+            this(Long.MAX_VALUE);
+        }
+
+        TestPraiseCounterManager(long readTtl) {
+            this(readTtl, 100);
+        }
+
+        TestPraiseCounterManager(long readTtl, int maxStoredCounts) {
+            super(4, readTtl, maxStoredCounts);
+        }
+
+        @Override
+        protected synchronized PraiseCount doReadPraiseCount(PhotoId photoId) {
+            noReads++;
+            PraiseCount result = shards.get(photoId);
+            if (isFlushingDuringRead) {
+                isFlushingDuringRead = false;
+                flush();
+            }
+            return (result == null) ? PraiseCount.ZERO : result;
+        }
+
+        @Override
+        protected synchronized void doAddToShards(Map<PhotoId, PraiseCount> praise) {
+            if (isFailing) {
+                throw new IllegalStateException("datastore not available");
+            }
+            noWrites++;
+            for (Map.Entry<PhotoId, PraiseCount> entry : praise.entrySet()) {
+                shards.put(entry.getKey(), getStored(entry.getKey()).add(entry.getValue()));
+            }
+        }
+
+        PraiseCount getStored(PhotoId photoId) {
+            PraiseCount result = shards.get(photoId);
+            return (result == null) ? PraiseCount.ZERO : result;
+        }
+    }
+
+    @Test
+    public void testAddPraise() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager();
+        PhotoId photoId = new PhotoId(1);
+
+        manager.addPraise(photoId, 3);
+        manager.addPraise(photoId, 5);
+
+        PraiseCount count = manager.getPraiseCount(photoId);
+        assertEquals(8, count.getPraiseSum());
+        assertEquals(2, count.getNoVotes());
+        assertEquals(2, manager.getNoPendingVotes());
+        assertEquals(0, manager.noWrites);
+        assertEquals(0, manager.getPraiseCount(new PhotoId(2)).getNoVotes());
+    }
+
+    @Test
+    public void testFlush() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager();
+        PhotoId photoId = new PhotoId(1);
+        manager.shards.put(photoId, new PraiseCount(9, 2));
+
+        manager.addPraise(photoId, 1);
+        manager.addPraise(new PhotoId(2), 4);
+        manager.flush();
+
+        assertEquals(0, manager.getNoPendingVotes());
+        assertEquals(1, manager.noWrites);
+        assertEquals(10, manager.getStored(photoId).getPraiseSum());
+        assertEquals(3, manager.getStored(photoId).getNoVotes());
+        assertEquals(10, manager.getPraiseCount(photoId).getPraiseSum());
+        assertEquals(3, manager.getPraiseCount(photoId).getNoVotes());
+        assertEquals(1, manager.noReads);
+
+        manager.flush();
+        assertEquals(1, manager.noWrites);
+    }
+
+    @Test
+    public void testFailedFlushKeepsVotesPending() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager();
+        PhotoId photoId = new PhotoId(1);
+        manager.addPraise(photoId, 6);
+
+        manager.isFailing = true;
+        manager.flush();
+        assertEquals(1, manager.getNoPendingVotes());
+
+        manager.isFailing = false;
+        manager.flush();
+        assertEquals(0, manager.getNoPendingVotes());
+        assertEquals(6, manager.getStored(photoId).getPraiseSum());
+    }
+
+    @Test
+    public void testConcurrentVotesAreNotLost() throws InterruptedException {
+        final TestPraiseCounterManager manager = new TestPraiseCounterManager();
+        final PhotoId photoId = new PhotoId(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    manager.addPraise(photoId, 2);
+                    if (j % 100 == 0) {
+                        manager.flush();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        manager.flush();
+
+        assertEquals(8000, manager.getPraiseCount(photoId).getNoVotes());
+        assertEquals(16000, manager.getPraiseCount(photoId).getPraiseSum());
+        assertEquals(8000, manager.getStored(photoId).getNoVotes());
+        assertEquals(16000, manager.getStored(photoId).getPraiseSum());
+    }
+
+    @Test
+    public void testStoredCountIsReadAgainAfterTtl() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager(-1);
+        PhotoId photoId = new PhotoId(1);
+        assertEquals(0, manager.getPraiseCount(photoId).getNoVotes());
+
+        // votes flushed by another instance
+        manager.shards.put(photoId, new PraiseCount(7, 1));
+        assertEquals(7, manager.getPraiseCount(photoId).getPraiseSum());
+        assertEquals(2, manager.noReads);
+    }
+
+    @Test
+    public void testFlushedVotesAreNotCountedTwice() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager(-1);
+        PhotoId photoId = new PhotoId(1);
+        manager.shards.put(photoId, new PraiseCount(9, 2));
+        manager.addPraise(photoId, 1);
+        assertEquals(3, manager.getPraiseCount(photoId).getNoVotes());
+
+        manager.flush();
+        manager.addPraise(photoId, 4);
+        PraiseCount count = manager.getPraiseCount(photoId);
+        assertEquals(14, count.getPraiseSum());
+        assertEquals(4, count.getNoVotes());
+    }
+
+    @Test
+    public void testFlushedAccumulatorsAreRemoved() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager();
+        PhotoId photoId = new PhotoId(1);
+        manager.addPraise(photoId, 2);
+        manager.addPraise(new PhotoId(2), 3);
+        assertEquals(2, manager.getNoAccumulators());
+
+        manager.flush();
+        assertEquals(0, manager.getNoAccumulators());
+        assertEquals(2, manager.getPraiseCount(photoId).getPraiseSum());
+
+        manager.addPraise(photoId, 5);
+        assertEquals(1, manager.getNoAccumulators());
+        assertEquals(7, manager.getPraiseCount(photoId).getPraiseSum());
+        assertEquals(2, manager.getPraiseCount(photoId).getNoVotes());
+    }
+
+    @Test
+    public void testRetiredAccumulatorTakesNoVotes() {
+        PraiseAccumulator accumulator = new PraiseAccumulator();
+        assertTrue(accumulator.addVote(4));
+        assertFalse(accumulator.retireIfFlushed());
+
+        accumulator.markFlushed(new PraiseCount(4, 1));
+        assertTrue(accumulator.retireIfFlushed());
+        assertFalse(accumulator.addVote(1));
+        assertEquals(0, accumulator.getPendingPraise().getNoVotes());
+    }
+
+    @Test
+    public void testReadOverlappingFlushIsNotKept() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager();
+        PhotoId photoId = new PhotoId(1);
+        manager.shards.put(photoId, new PraiseCount(9, 2));
+        manager.addPraise(photoId, 1);
+
+        // the read misses the flushed vote, so it must not be kept
+        manager.isFlushingDuringRead = true;
+        manager.getPraiseCount(photoId);
+
+        assertEquals(3, manager.getPraiseCount(photoId).getNoVotes());
+        assertEquals(3, manager.getPraiseCount(photoId).getNoVotes());
+        assertEquals(2, manager.noReads);
+    }
+
+    @Test
+    public void testStoredPraiseCountsAreBounded() {
+        TestPraiseCounterManager manager = new TestPraiseCounterManager(Long.MAX_VALUE, 10);
+        for (int i = 1; i <= 50; i++) {
+            manager.getPraiseCount(new PhotoId(i));
+        }
+        assertEquals(10, manager.getNoStoredPraiseCounts());
+    }
+}
@@ -74,6 +74,53 @@ public class SphericCoordinateTest {
         assertEquals(c1.getRadius(), c2.getRadius(), 0.001);
     }
 
+    @Test
+    public void testNearlyEqualValuesShareInstance() {
+        // x is close to the border of a cache cell, 1.00001
+        SphericCoordinate c1a = Coordinate.getSphericCoordinate(0, Math.PI / 2, 1.000009995);
+        SphericCoordinate c1b = Coordinate.getSphericCoordinate(0, Math.PI / 2, 1.000010004);
+        SphericCoordinate c1c = Coordinate.getSphericCoordinate(1e-9, Math.PI / 2, 1.000009995);
+
+        assertTrue(c1a == c1b);
+        assertTrue(c1a == c1c);
+
+        SphericCoordinate c2 = Coordinate.getSphericCoordinate(0, Math.PI / 2, 1.0001);
+        assertTrue(c1a != c2);
+        assertFalse(c1a.isEqual(c2));
+    }
+
+    @Test
+    public void testConcurrentInterning() throws InterruptedException {
+        final SphericCoordinate[] results = new SphericCoordinate[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    results[index] = Coordinate.getSphericCoordinate(0.5, 0.5, 42 + index * 1e-7);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (SphericCoordinate result : results) {
+            assertTrue(results[0] == result);
+        }
+    }
+
+    @Test
+    public void testCartesianRepresentationIsCached() {
+        SphericCoordinate c1 = Coordinate.getSphericCoordinate(-3, 2, 30);
+        CartesianCoordinate cartesian = c1.asCartesianCoordinate();
+
+        assertSame(cartesian, c1.asCartesianCoordinate());
+        assertSame(c1, cartesian.asSphericCoordinate());
+    }
+
     private void assertConstructorThrowsInvalidArgumentException(double phi, double theta, double radius) {
         try {
             Coordinate.getSphericCoordinate(phi, theta, radius);
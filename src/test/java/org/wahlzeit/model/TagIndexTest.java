@@ -0,0 +1,78 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TagIndexTest {
+
+    private static Set<String> tags(String... tags) {
+        return new HashSet<String>(Arrays.asList(tags));
+    }
+
+    @Test
+    public void testSetTags() {
+        TagIndex index = new TagIndex();
+        PhotoId p1 = new PhotoId(1);
+        PhotoId p2 = new PhotoId(2);
+
+        assertTrue(index.setTags(p1, tags("tg:a", "tg:b")).isEmpty());
+        index.setTags(p2, tags("tg:b"));
+
+        assertEquals(1, index.getPhotoIds("tg:a").size());
+        assertTrue(index.getPhotoIds("tg:a").contains(p1));
+        assertEquals(2, index.getPhotoIds("tg:b").size());
+        assertTrue(index.getPhotoIds("tg:c").isEmpty());
+    }
+
+    @Test
+    public void testReplaceTags() {
+        TagIndex index = new TagIndex();
+        PhotoId p1 = new PhotoId(1);
+
+        index.setTags(p1, tags("tg:a", "tg:b"));
+        assertEquals(tags("tg:a", "tg:b"), index.setTags(p1, tags("tg:b", "tg:c")));
+
+        assertTrue(index.getPhotoIds("tg:a").isEmpty());
+        assertTrue(index.getPhotoIds("tg:c").contains(p1));
+        assertEquals(tags("tg:b", "tg:c"), index.getTags(p1));
+        assertEquals(2, index.getNoTags());
+    }
+
+    @Test
+    public void testGetPhotoIdsForAny() {
+        TagIndex index = new TagIndex();
+        PhotoId p1 = new PhotoId(1);
+        PhotoId p2 = new PhotoId(2);
+        PhotoId p3 = new PhotoId(3);
+        index.setTags(p1, tags("un:x", "tg:x"));
+        index.setTags(p2, tags("tg:y"));
+        index.setTags(p3, tags("tg:z"));
+
+        PhotoIdSet result = index.getPhotoIdsForAny(Arrays.asList("un:x", "tg:y"));
+        assertEquals(2, result.size());
+        assertTrue(result.contains(p1));
+        assertTrue(result.contains(p2));
+        assertFalse(result.contains(p3));
+    }
+
+    @Test
+    public void testRemovePhoto() {
+        TagIndex index = new TagIndex();
+        PhotoId p1 = new PhotoId(1);
+        index.setTags(p1, tags("tg:a"));
+
+        index.removePhoto(p1);
+        assertTrue(index.getPhotoIds("tg:a").isEmpty());
+        assertTrue(index.getTags(p1).isEmpty());
+        assertEquals(0, index.getNoTags());
+
+        index.setTags(p1, Collections.<String>emptySet());
+        assertEquals(0, index.getNoTags());
+    }
+}
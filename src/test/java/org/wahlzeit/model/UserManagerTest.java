@@ -0,0 +1,90 @@
+package org.wahlzeit.model;
+
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Work;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.wahlzeit.services.EmailAddress;
+import org.wahlzeit.testEnvironmentProvider.LocalDatastoreServiceTestConfigProvider;
+import org.wahlzeit.testEnvironmentProvider.RegisteredOfyEnvironmentProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for {@link UserManager}.
+ */
+public class UserManagerTest {
+
+    @ClassRule
+    public static RuleChain ruleChain = RuleChain.
+            outerRule(new LocalDatastoreServiceTestConfigProvider()).
+            around(new RegisteredOfyEnvironmentProvider());
+
+    @Test
+    public void testGetUserByEmailAddress() {
+        User user = createUser("umt1", "luke", "luke@tatooi.ne");
+
+        assertSame(user, UserManager.getInstance().getUserByEmailAddress("luke@tatooi.ne"));
+        assertSame(user, UserManager.getInstance().getUserByEmailAddress(EmailAddress.getFromString("luke@tatooi.ne")));
+    }
+
+    @Test
+    public void testChangedEmailAddressIsIndexed() {
+        final User user = createUser("umt2", "leia", "leia@alderaa.n");
+
+        ObjectifyService.run(new Work<Void>() {
+            @Override
+            public Void run() {
+                UserManager.getInstance().setEmailAddress(user, EmailAddress.getFromString("leia@rebellio.n"));
+                return null;
+            }
+        });
+
+        UserManager userManager = UserManager.getInstance();
+        assertSame(user, userManager.getUserByEmailAddress("leia@rebellio.n"));
+        assertFalse(userManager.emailAddressUserMap.containsKey(EmailAddress.getFromString("leia@alderaa.n")));
+    }
+
+    @Test
+    public void testDeletedUserIsNotIndexed() {
+        final User user = createUser("umt3", "obiwan", "ben@tatooi.ne");
+
+        ObjectifyService.run(new Work<Void>() {
+            @Override
+            public Void run() {
+                UserManager.getInstance().deleteClient(user);
+                return null;
+            }
+        });
+
+        assertFalse(UserManager.getInstance().emailAddressUserMap.containsKey(EmailAddress.getFromString("ben@tatooi.ne")));
+    }
+
+    @Test
+    public void testRemovedUserReleasesNickname() {
+        final User user = createUser("umt4", "yoda", "yoda@dagoba.h");
+
+        ObjectifyService.run(new Work<Void>() {
+            @Override
+            public Void run() {
+                UserManager.getInstance().removeClient(user);
+                return null;
+            }
+        });
+
+        UserManager userManager = UserManager.getInstance();
+        assertNull(userManager.getClientById("umt4"));
+        assertFalse(userManager.usedNicknames.contains("yoda"));
+        assertFalse(userManager.emailAddressUserMap.containsKey(EmailAddress.getFromString("yoda@dagoba.h")));
+    }
+
+    protected User createUser(final String id, final String nickName, final String emailAddress) {
+        return ObjectifyService.run(new Work<User>() {
+            @Override
+            public User run() {
+                return new User(id, nickName, emailAddress);
+            }
+        });
+    }
+}
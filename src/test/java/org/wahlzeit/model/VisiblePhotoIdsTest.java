@@ -0,0 +1,71 @@
+package org.wahlzeit.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VisiblePhotoIdsTest {
+
+    @Test
+    public void testAddAndRemove() {
+        VisiblePhotoIds visiblePhotoIds = new VisiblePhotoIds();
+        PhotoId p1 = new PhotoId(1);
+        PhotoId p2 = new PhotoId(2);
+        PhotoId p3 = new PhotoId(300);
+
+        assertTrue(visiblePhotoIds.add(p1));
+        assertTrue(visiblePhotoIds.add(p2));
+        assertTrue(visiblePhotoIds.add(p3));
+        assertFalse(visiblePhotoIds.add(p2));
+        assertEquals(3, visiblePhotoIds.size());
+
+        // removing from the middle moves the last id into the gap
+        assertTrue(visiblePhotoIds.remove(p1));
+        assertFalse(visiblePhotoIds.remove(p1));
+        assertFalse(visiblePhotoIds.contains(p1));
+        assertTrue(visiblePhotoIds.contains(p2));
+        assertTrue(visiblePhotoIds.contains(p3));
+        assertEquals(2, visiblePhotoIds.size());
+
+        assertTrue(visiblePhotoIds.remove(p3));
+        assertTrue(visiblePhotoIds.remove(p2));
+        assertEquals(0, visiblePhotoIds.size());
+        assertFalse(visiblePhotoIds.remove(new PhotoId(1000)));
+    }
+
+    @Test
+    public void testGetRandomId() {
+        VisiblePhotoIds visiblePhotoIds = new VisiblePhotoIds();
+        Random random = new Random(1);
+        assertTrue(visiblePhotoIds.getRandomId(random).isNullId());
+
+        PhotoId p1 = PhotoId.getNextId();
+        PhotoId p2 = PhotoId.getNextId();
+        visiblePhotoIds.add(p1);
+        visiblePhotoIds.add(p2);
+
+        boolean seenP1 = false;
+        boolean seenP2 = false;
+        for (int i = 0; i < 100; i++) {
+            PhotoId id = visiblePhotoIds.getRandomId(random);
+            seenP1 |= id == p1;
+            seenP2 |= id == p2;
+            assertTrue(id == p1 || id == p2);
+        }
+        assertTrue(seenP1 && seenP2);
+    }
+
+    @Test
+    public void testAsPhotoIdSet() {
+        VisiblePhotoIds visiblePhotoIds = new VisiblePhotoIds();
+        visiblePhotoIds.add(new PhotoId(4));
+        visiblePhotoIds.add(new PhotoId(9));
+        visiblePhotoIds.remove(new PhotoId(4));
+
+        PhotoIdSet result = visiblePhotoIds.asPhotoIdSet();
+        assertEquals(1, result.size());
+        assertTrue(result.contains(9));
+    }
+}
@@ -0,0 +1,57 @@
+package org.wahlzeit.model.persistence;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImageCacheTest {
+
+    @Test
+    public void testPutAndGetImageData() {
+        ImageCache cache = new ImageCache(10, 1024);
+        byte[] data = new byte[] {1, 2, 3};
+        cache.putImageData("x1", 0, data, true);
+
+        assertTrue(cache.hasImage("x1", 0));
+        assertFalse(cache.hasImage("x1", 1));
+        assertArrayEquals(data, cache.getImageData("x1", 0));
+        assertNull(cache.getImageData("x2", 0));
+        assertEquals(3, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testReturnsCopies() {
+        ImageCache cache = new ImageCache(10, 1024);
+        cache.putImageData("x1", 0, new byte[] {1, 2, 3}, true);
+
+        cache.getImageData("x1", 0)[0] = 42;
+        assertEquals(1, cache.getImageData("x1", 0)[0]);
+    }
+
+    @Test
+    public void testPendingImageData() {
+        ImageCache cache = new ImageCache(10, 1024);
+        cache.putImageData("x1", 0, new byte[] {1, 2, 3}, false);
+        cache.putImageData("x2", 0, new byte[] {4}, true);
+
+        assertArrayEquals(new byte[] {1, 2, 3}, cache.getPendingImageData("x1", 0));
+        assertNull(cache.getPendingImageData("x2", 0));
+        assertNull(cache.getPendingImageData("x3", 0));
+    }
+
+    @Test
+    public void testUnpersistedImagesAreNotEvicted() {
+        ImageCache cache = new ImageCache(10, 100);
+        cache.putImageData("x1", 0, new byte[60], false);
+        cache.putImageData("x2", 0, new byte[60], false);
+
+        assertTrue(cache.hasImage("x1", 0));
+        assertTrue(cache.hasImage("x2", 0));
+        assertFalse(cache.isPersisted("x1", 0));
+
+        cache.markPersisted("x1", 0);
+        assertFalse(cache.hasImage("x1", 0));
+        assertTrue(cache.hasImage("x2", 0));
+        assertEquals(60, cache.getWeightedSize());
+    }
+}
@@ -0,0 +1,59 @@
+package org.wahlzeit.services;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DirtyObjectTrackerTest {
+
+    private static class TestObject extends DataObject {
+    }
+
+    private static class OtherTestObject extends TestObject {
+    }
+
+    @Test
+    public void testIncWriteCountRegistersObject() {
+        TestObject object = new TestObject();
+        assertFalse(DirtyObjectTracker.getInstance().getDirtyObjects(TestObject.class).contains(object));
+
+        object.incWriteCount();
+        object.incWriteCount();
+        List<TestObject> dirtyObjects = DirtyObjectTracker.getInstance().getDirtyObjects(TestObject.class);
+        assertTrue(dirtyObjects.contains(object));
+        assertEquals(1, dirtyObjects.size());
+
+        object.resetWriteCount();
+        assertFalse(DirtyObjectTracker.getInstance().getDirtyObjects(TestObject.class).contains(object));
+    }
+
+    @Test
+    public void testGetDirtyObjectsIncludesSubclasses() {
+        DirtyObjectTracker tracker = new DirtyObjectTracker();
+        TestObject object = new TestObject();
+        OtherTestObject otherObject = new OtherTestObject();
+        object.incWriteCount();
+        otherObject.incWriteCount();
+        tracker.markDirty(object);
+        tracker.markDirty(otherObject);
+
+        assertEquals(2, tracker.getDirtyObjects(TestObject.class).size());
+        assertEquals(1, tracker.getDirtyObjects(OtherTestObject.class).size());
+        assertEquals(2, tracker.getNoDirtyObjects());
+
+        tracker.markClean(object);
+        assertEquals(1, tracker.getDirtyObjects(TestObject.class).size());
+        assertSame(otherObject, tracker.getDirtyObjects(Persistent.class).get(0));
+    }
+
+    @Test
+    public void testGetDirtyObjectsSkipsCleanObjects() {
+        DirtyObjectTracker tracker = new DirtyObjectTracker();
+        TestObject object = new TestObject();
+        tracker.markDirty(object);
+
+        assertTrue(tracker.getDirtyObjects(TestObject.class).isEmpty());
+    }
+}
@@ -0,0 +1,132 @@
+package org.wahlzeit.services;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SegmentedLruCacheTest {
+
+    @Test
+    public void testPutAndGet() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(10, 100);
+        assertNull(cache.put("a", "1"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("1", cache.put("a", "2"));
+        assertEquals("2", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsExistingValue() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(10, 100);
+        assertEquals("1", cache.putIfAbsent("a", "1"));
+        assertEquals("1", cache.putIfAbsent("a", "2"));
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    public void testEvictsByEntryCount() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(3, 100);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.put("d", "4");
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.containsKey("a"));
+        assertTrue(cache.containsKey("d"));
+    }
+
+    @Test
+    public void testFrequentlyUsedEntriesSurviveScans() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(3, 100);
+        cache.put("hot", "1");
+        cache.get("hot");
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("scan" + i, "x");
+        }
+
+        assertTrue(cache.containsKey("hot"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testPeekDoesNotProtectEntry() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(3, 100);
+        cache.put("cold", "1");
+        assertEquals("1", cache.peek("cold"));
+        assertNull(cache.peek("missing"));
+
+        for (int i = 0; i < 10; i++) {
+            cache.put("scan" + i, "x");
+        }
+
+        assertFalse(cache.containsKey("cold"));
+    }
+
+    @Test
+    public void testEvictsByWeight() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(100, 10) {
+            @Override
+            protected long weigh(String value) {
+                return value.length();
+            }
+        };
+        cache.put("a", "12345");
+        cache.put("b", "12345");
+        assertEquals(10, cache.getWeightedSize());
+
+        cache.put("c", "123");
+        assertFalse(cache.containsKey("a"));
+        assertEquals(8, cache.getWeightedSize());
+    }
+
+    @Test
+    public void testPinnedEntriesAreNotEvicted() {
+        final Set<String> pinned = new HashSet<String>();
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(2, 100) {
+            @Override
+            protected boolean isEvictable(String value) {
+                return !pinned.contains(value);
+            }
+        };
+        pinned.add("1");
+        pinned.add("2");
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+
+        // only the unpinned entry could go
+        assertTrue(cache.containsKey("a"));
+        assertTrue(cache.containsKey("b"));
+        assertFalse(cache.containsKey("c"));
+
+        pinned.add("4");
+        cache.put("d", "4");
+        assertEquals(3, cache.size());
+
+        pinned.clear();
+        cache.cleanUp();
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testRemove() {
+        SegmentedLruCache<String, String> cache = new SegmentedLruCache<String, String>(10, 100);
+        cache.put("a", "1");
+        assertEquals("1", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimits() {
+        new SegmentedLruCache<String, String>(0, 100);
+    }
+}
@@ -0,0 +1,208 @@
+package org.wahlzeit.services;
+
+import com.googlecode.objectify.Result;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindBufferTest {
+
+    private static class TestObject implements Persistent {
+        private final String id;
+        private int writeCount = 0;
+
+        TestObject(String id) {
+            this.id = id;
+        }
+
+        public boolean isDirty() {
+            return writeCount != 0;
+        }
+
+        public void incWriteCount() {
+            writeCount++;
+        }
+
+        public void resetWriteCount() {
+            writeCount = 0;
+        }
+    }
+
+    private static class TestBuffer extends WriteBehindBuffer {
+        final List<List<Persistent>> batches = new ArrayList<List<Persistent>>();
+
+        TestBuffer(int maxEntries, long maxDelay) {
+            super(maxEntries, maxDelay);
+        }
+
+        @Override
+        protected Result<?> doSave(List<Persistent> objects) {
+            batches.add(new ArrayList<Persistent>(objects));
+            return null;
+        }
+
+        @Override
+        protected Object asBufferKey(Object object) {
+            return (object instanceof TestObject) ? ((TestObject) object).id : object;
+        }
+    }
+
+    private static class PendingResult implements Result<Object> {
+        private boolean fails = false;
+        private boolean done = false;
+
+        public Object now() {
+            done = true;
+            if (fails) {
+                throw new RuntimeException("save failed");
+            }
+            return null;
+        }
+    }
+
+    private static class AsyncTestBuffer extends TestBuffer {
+        private final List<PendingResult> results = new ArrayList<PendingResult>();
+
+        AsyncTestBuffer(int maxEntries, long maxDelay) {
+            super(maxEntries, maxDelay);
+        }
+
+        @Override
+        protected Result<?> doSave(List<Persistent> objects) {
+            super.doSave(objects);
+            PendingResult result = new PendingResult();
+            results.add(result);
+            return result;
+        }
+    }
+
+    private static class TestManager extends ObjectManager {
+        private int noUpdates = 0;
+
+        @Override
+        protected void updateDependents(Persistent object) {
+            noUpdates++;
+        }
+    }
+
+    private static TestObject dirty(String id) {
+        TestObject result = new TestObject(id);
+        result.incWriteCount();
+        return result;
+    }
+
+    @Test
+    public void testCoalescesWritesOfSameEntity() {
+        TestBuffer buffer = new TestBuffer(100, Long.MAX_VALUE);
+        TestManager manager = new TestManager();
+        TestObject second = dirty("a");
+
+        buffer.add(manager, dirty("a"));
+        buffer.add(manager, dirty("b"));
+        buffer.add(manager, second);
+        assertEquals(2, buffer.size());
+        assertTrue(buffer.batches.isEmpty());
+
+        buffer.flush();
+        assertEquals(0, buffer.size());
+        assertEquals(1, buffer.batches.size());
+        assertEquals(2, buffer.batches.get(0).size());
+        assertSame(second, buffer.batches.get(0).get(0));
+        assertFalse(second.isDirty());
+        assertEquals(2, manager.noUpdates);
+    }
+
+    @Test
+    public void testFlushesWhenFull() {
+        TestBuffer buffer = new TestBuffer(3, Long.MAX_VALUE);
+        TestManager manager = new TestManager();
+
+        buffer.add(manager, dirty("a"));
+        buffer.add(manager, dirty("b"));
+        assertTrue(buffer.batches.isEmpty());
+        buffer.add(manager, dirty("c"));
+
+        assertEquals(1, buffer.batches.size());
+        assertEquals(3, buffer.batches.get(0).size());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testFlushesWhenOldestEntryIsDue() {
+        TestBuffer buffer = new TestBuffer(100, 0);
+        buffer.add(new TestManager(), dirty("a"));
+
+        assertEquals(1, buffer.batches.size());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testRemoveDropsQueuedWrite() {
+        TestBuffer buffer = new TestBuffer(100, Long.MAX_VALUE);
+        TestObject object = dirty("a");
+        buffer.add(new TestManager(), object);
+
+        buffer.remove(object);
+        buffer.flush();
+        assertTrue(buffer.batches.isEmpty());
+        assertTrue(object.isDirty());
+    }
+
+    @Test
+    public void testObjectsStayDirtyUntilSaveCompleted() {
+        AsyncTestBuffer buffer = new AsyncTestBuffer(1, Long.MAX_VALUE);
+        TestManager manager = new TestManager();
+        TestObject object = dirty("a");
+
+        buffer.add(manager, object);
+        assertEquals(1, buffer.batches.size());
+        assertEquals(1, buffer.getNoPendingSaves());
+        assertTrue(object.isDirty());
+        assertEquals(0, manager.noUpdates);
+
+        buffer.flush();
+        assertTrue(buffer.results.get(0).done);
+        assertEquals(0, buffer.getNoPendingSaves());
+        assertFalse(object.isDirty());
+        assertEquals(1, manager.noUpdates);
+    }
+
+    @Test
+    public void testFailedSaveIsQueuedAgain() {
+        AsyncTestBuffer buffer = new AsyncTestBuffer(1, Long.MAX_VALUE);
+        TestManager manager = new TestManager();
+        TestObject object = dirty("a");
+
+        buffer.add(manager, object);
+        buffer.results.get(0).fails = true;
+
+        assertFalse(buffer.awaitPendingSaves());
+        assertTrue(object.isDirty());
+        assertEquals(1, buffer.size());
+        assertEquals(0, manager.noUpdates);
+
+        buffer.flush();
+        assertEquals(2, buffer.batches.size());
+        assertFalse(object.isDirty());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testObjectWrittenDuringSaveStaysDirty() {
+        AsyncTestBuffer buffer = new AsyncTestBuffer(100, Long.MAX_VALUE);
+        TestManager manager = new TestManager();
+        TestObject object = dirty("a");
+
+        buffer.add(manager, object);
+        buffer.save(buffer.removeAllEntries());
+        object.incWriteCount();
+        buffer.add(manager, object);
+
+        assertTrue(buffer.awaitPendingSaves());
+        assertTrue(object.isDirty());
+        assertEquals(1, buffer.size());
+    }
+}